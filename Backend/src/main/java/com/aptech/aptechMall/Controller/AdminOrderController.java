@@ -1,6 +1,7 @@
 package com.aptech.aptechMall.Controller;
 
 import com.aptech.aptechMall.dto.ApiResponse;
+import com.aptech.aptechMall.dto.CursorPage;
 import com.aptech.aptechMall.dto.order.OrderResponse;
 import com.aptech.aptechMall.dto.order.UpdateOrderAddressRequest;
 import com.aptech.aptechMall.dto.order.UpdateOrderFeesRequest;
@@ -61,6 +62,36 @@ public class AdminOrderController {
         );
     }
 
+    /**
+     * Get all orders (admin view) with keyset pagination and filters
+     * GET /api/admin/orders/cursor?cursor={nextCursor}&size={size}&status={status}&userId={userId}&includeTotal={bool}
+     *
+     * Deep pages stay fast (no OFFSET) and no COUNT(*) runs unless includeTotal=true
+     *
+     * @param cursor Cursor from the previous page (omit for the first page)
+     * @param size Page size (default 10, max 100)
+     * @param status Optional status filter
+     * @param userId Optional user ID filter
+     * @param includeTotal Whether to count matching orders (default false)
+     * @return CursorPage of OrderResponse
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<OrderResponse>>> getAllOrdersByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+
+        log.info("GET /api/admin/orders/cursor - size: {}, status: {}, userId: {}", size, status, userId);
+
+        CursorPage<OrderResponse> orders = orderService.getAllOrdersPage(status, userId, cursor, size, includeTotal);
+
+        return ResponseEntity.ok(
+                ApiResponse.success(orders, "Orders retrieved successfully")
+        );
+    }
+
     /**
      * Get order detail by ID (admin view)
      * GET /api/admin/orders/{orderId}
@@ -0,0 +1,42 @@
+package com.aptech.aptechMall.Controller;
+
+import com.aptech.aptechMall.service.wallet.BankSmsGrammarRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Controller for SMS parsing grammars (rules in bank_sms_grammar_rules, aliases in bank_sms_senders)
+ * Only accessible by admin users
+ */
+@RestController
+@RequestMapping("/api/admin/bank-sms-grammars")
+@RequiredArgsConstructor
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"})
+@PreAuthorize("hasRole('ADMIN')")
+public class BankSmsGrammarController {
+
+    private final BankSmsGrammarRegistry grammarRegistry;
+
+    /**
+     * Get loaded grammars and sender aliases
+     * @return Grammar → rule names, alias → grammar
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getGrammars() {
+        return ResponseEntity.ok(grammarRegistry.describe());
+    }
+
+    /**
+     * Reload grammars from config tables on all nodes
+     * @return Reloaded grammars
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reloadGrammars() {
+        grammarRegistry.reloadAll();
+        return ResponseEntity.ok(grammarRegistry.describe());
+    }
+}
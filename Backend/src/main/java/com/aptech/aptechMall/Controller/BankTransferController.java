@@ -2,6 +2,7 @@ package com.aptech.aptechMall.Controller;
 
 import com.aptech.aptechMall.dto.ApiResponse;
 import com.aptech.aptechMall.entity.BankSms;
+import com.aptech.aptechMall.service.wallet.BankSmsIngestQueue;
 import com.aptech.aptechMall.service.wallet.BankTransferService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -48,6 +49,7 @@ import java.util.Map;
 public class BankTransferController {
 
     private final BankTransferService bankTransferService;
+    private final BankSmsIngestQueue ingestQueue;
 
     /**
      * Webhook nhận SMS từ ngân hàng (được gọi bởi SMS Forwarder app)
@@ -68,6 +70,10 @@ public class BankTransferController {
      * 5. Nạp tiền vào ví user
      * 6. Lưu log vào database (BankSms entity)
      *
+     * Async mode (bank-sms.ingest.async=true):
+     * - Chỉ lưu SMS rồi trả về 202 ngay, bước 2-5 chạy trong BankSmsIngestQueue
+     * - Response chỉ có smsId (processed=false), kết quả xem qua GET /api/bank-transfer/sms/{id}
+     *
      * Format SMS hỗ trợ:
      * - "TK 1234567890 +500,000 VND. GD: 987654. ND: Nap tien USER123"
      * - "+500000d GD:987654 ND:USER123"
@@ -141,6 +147,18 @@ public class BankTransferController {
             // Save SMS to database
             BankSms savedSms = bankTransferService.saveSms(sender, message, raw);
 
+            if (ingestQueue.isAsync()) {
+                boolean queued = ingestQueue.submit(savedSms);
+                Map<String, Object> response = Map.of(
+                        "status", "accepted",
+                        "smsId", savedSms.getId(),
+                        "queued", queued,
+                        "processed", false
+                );
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .body(ApiResponse.success(response, "SMS received, processing asynchronously"));
+            }
+
             // Process SMS immediately
             bankTransferService.processSingleSms(savedSms);
 
@@ -91,6 +91,23 @@ public class LoginController {
         return ResponseEntity.ok("Logout Successfully");
     }
 
+    /**
+     * Đăng xuất khỏi tất cả thiết bị
+     *
+     * Thực hiện:
+     * - Thu hồi mọi token đã phát hành cho user (watermark theo thời điểm phát hành)
+     * - Xóa refresh token cookie của thiết bị hiện tại
+     *
+     * @param request HTTP request chứa access token trong Authorization header
+     * @param response HTTP response để xóa cookie
+     * @return Thông báo đăng xuất thành công
+     */
+    @PostMapping("/logout-all")
+    public ResponseEntity<String> logoutAll(HttpServletRequest request, HttpServletResponse response){
+        authService.logoutAll(request, response);
+        return ResponseEntity.ok("Logout Successfully");
+    }
+
     /**
      * Refresh access token mới khi token cũ hết hạn
      *
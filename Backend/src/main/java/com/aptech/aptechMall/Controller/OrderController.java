@@ -1,6 +1,7 @@
 package com.aptech.aptechMall.Controller;
 
 import com.aptech.aptechMall.dto.ApiResponse;
+import com.aptech.aptechMall.dto.CursorPage;
 import com.aptech.aptechMall.dto.order.CheckoutRequest;
 import com.aptech.aptechMall.dto.order.OrderResponse;
 import com.aptech.aptechMall.dto.order.UpdateOrderAddressRequest;
@@ -142,6 +143,39 @@ public class OrderController {
         );
     }
 
+    /**
+     * Lấy danh sách đơn hàng của user - keyset pagination
+     *
+     * GET /api/orders/cursor?cursor={nextCursor}&size={size}&includeTotal={true|false}
+     *
+     * Không có cursor → trang đầu. Trang sau: gửi lại nextCursor của response trước.
+     * Nhanh hơn phân trang theo page ở trang sâu, không đếm tổng mỗi lần.
+     *
+     * Response (CursorPage):
+     * - items: Danh sách đơn hàng (summary)
+     * - nextCursor, hasNext: Cursor cho trang tiếp theo
+     * - totalCount: Chỉ có khi includeTotal=true
+     *
+     * @param cursor Cursor của trang trước (bỏ trống cho trang đầu)
+     * @param size Số đơn mỗi trang (mặc định 10, tối đa 100)
+     * @param includeTotal Có đếm tổng số đơn hay không (mặc định false)
+     * @return CursorPage<OrderResponse>
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<OrderResponse>>> getUserOrdersByCursor(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", defaultValue = "10") int size,
+            @RequestParam(name = "includeTotal", defaultValue = "false") boolean includeTotal) {
+        Long userId = AuthenticationUtil.getCurrentUserId();
+        log.info("GET /api/orders/cursor - userId: {}, size: {}", userId, size);
+
+        CursorPage<OrderResponse> orders = orderService.getUserOrdersPage(userId, cursor, size, includeTotal);
+
+        return ResponseEntity.ok(
+                ApiResponse.success(orders, "Orders retrieved successfully")
+        );
+    }
+
     /**
      * Lấy thông tin chi tiết của một đơn hàng
      *
@@ -1,6 +1,7 @@
 package com.aptech.aptechMall.Controller;
 
 import com.aptech.aptechMall.dto.ApiResponse;
+import com.aptech.aptechMall.dto.CursorPage;
 import com.aptech.aptechMall.dto.wallet.*;
 import com.aptech.aptechMall.entity.PaymentGateway;
 import com.aptech.aptechMall.security.AuthenticationUtil;
@@ -9,12 +10,14 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -212,6 +215,43 @@ public class WalletController {
         }
     }
 
+    /**
+     * Lấy lịch sử giao dịch - keyset pagination
+     *
+     * GET /api/wallet/transactions/cursor?cursor={nextCursor}&size={size}&includeTotal={bool}
+     *                                    &transactionType={type}&startDate={iso}&endDate={iso}
+     *
+     * Không có cursor → trang đầu; trang sau gửi lại nextCursor. Filter type và date range dùng đồng thời được.
+     * totalCount chỉ có khi includeTotal=true.
+     *
+     * @param filter Bộ lọc giao dịch (query parameters, dùng cursor thay cho page)
+     * @return CursorPage<WalletTransactionResponse>
+     */
+    @GetMapping("/transactions/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<WalletTransactionResponse>>> getTransactionHistoryByCursor(
+            @ModelAttribute TransactionFilterRequest filter) {
+        try {
+            Long userId = AuthenticationUtil.getCurrentUserId();
+            log.info("GET /api/wallet/transactions/cursor - userId: {}, filter: {}", userId, filter);
+
+            CursorPage<WalletTransactionResponse> transactions = walletService.getTransactionHistoryPage(userId, filter);
+            return ResponseEntity.ok(ApiResponse.success(transactions, "Transactions retrieved successfully"));
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid transaction cursor: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error("INVALID_REQUEST", e.getMessage(), null));
+        } catch (IllegalStateException e) {
+            log.error("Authentication error: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("UNAUTHORIZED", e.getMessage(), null));
+        } catch (Exception e) {
+            log.error("Error getting transactions: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("SERVER_ERROR", "Failed to get transactions", e.getMessage()));
+        }
+    }
+
     /**
      * Lấy thông tin chi tiết của một giao dịch cụ thể
      *
@@ -247,6 +287,37 @@ public class WalletController {
         }
     }
 
+    /**
+     * Lấy số dư ví tại một thời điểm trong quá khứ
+     *
+     * GET /api/wallet/balance-at?at=2025-01-31T23:59:59
+     *
+     * Dùng cho sao kê / đối soát: tính từ checkpoint số dư gần nhất + giao dịch sau đó
+     *
+     * @param at Thời điểm (ISO-8601, giờ server)
+     * @return Số dư (VND) tại thời điểm at
+     */
+    @GetMapping("/balance-at")
+    public ResponseEntity<ApiResponse<BigDecimal>> getBalanceAt(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        try {
+            Long userId = AuthenticationUtil.getCurrentUserId();
+            log.info("GET /api/wallet/balance-at - userId: {}, at: {}", userId, at);
+
+            BigDecimal balance = walletService.getBalanceAt(userId, at);
+            return ResponseEntity.ok(ApiResponse.success(balance, "Balance retrieved successfully"));
+
+        } catch (IllegalStateException e) {
+            log.error("Authentication error: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("UNAUTHORIZED", e.getMessage(), null));
+        } catch (Exception e) {
+            log.error("Error getting balance at {}: {}", at, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("SERVER_ERROR", "Failed to get balance", e.getMessage()));
+        }
+    }
+
     /**
      * Khóa ví của một user (chỉ ADMIN)
      *
@@ -0,0 +1,94 @@
+package com.aptech.aptechMall.config;
+
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Factory cho Reactor Netty HttpClient - mỗi upstream host có connection pool riêng
+ *
+ * Tại sao cần:
+ * - WebClient.builder() mặc định dùng pool chung, không giới hạn pending acquire, không timeout
+ * - 1688 upstream chậm có thể chiếm hết connection của AliExpress
+ * - RestTemplate mặc định (HttpURLConnection) không có pool / timeout
+ *
+ * Cấu hình theo tên pool (aliexpress, m1688, exchange, ...):
+ * - http.client.{name}.max-connections        Số connection tối đa (default 50)
+ * - http.client.{name}.pending-acquire-max     Số request chờ connection tối đa (default 200)
+ * - http.client.{name}.pending-acquire-timeout Thời gian chờ connection (default 5s)
+ * - http.client.{name}.max-idle-time           Đóng connection idle (default 30s)
+ * - http.client.{name}.max-life-time           Tuổi tối đa của connection (default 5m)
+ * - http.client.{name}.evict-interval          Chu kỳ dọn connection idle (default 30s)
+ * - http.client.{name}.connect-timeout         Connect timeout (default 5s)
+ * - http.client.{name}.response-timeout        Response timeout (default 30s)
+ *
+ * Metrics: reactor.netty.connection.provider.* (tag name={name}, remote.address={host})
+ */
+@Slf4j
+@Component
+public class HttpClientFactory {
+
+    private static final String PREFIX = "http.client.";
+
+    private final Environment environment;
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+
+    public HttpClientFactory(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Tạo HttpClient dùng connection pool riêng của {@code name}
+     *
+     * Gọi nhiều lần với cùng tên sẽ dùng chung một pool
+     *
+     * @param name Tên pool (aliexpress, m1688, exchange)
+     * @return HttpClient đã cấu hình pool, keep-alive, timeout
+     */
+    public HttpClient create(String name) {
+        ConnectionProvider provider = providers.computeIfAbsent(name, this::buildProvider);
+
+        int connectTimeout = (int) duration(name, "connect-timeout", Duration.ofSeconds(5)).toMillis();
+        Duration responseTimeout = duration(name, "response-timeout", Duration.ofSeconds(30));
+
+        return HttpClient.create(provider)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                .responseTimeout(responseTimeout);
+    }
+
+    private ConnectionProvider buildProvider(String name) {
+        int maxConnections = environment.getProperty(PREFIX + name + ".max-connections", Integer.class, 50);
+        int pendingAcquireMax = environment.getProperty(PREFIX + name + ".pending-acquire-max", Integer.class, 200);
+
+        log.info("HTTP connection pool '{}': maxConnections={}, pendingAcquireMax={}",
+                name, maxConnections, pendingAcquireMax);
+
+        return ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(duration(name, "pending-acquire-timeout", Duration.ofSeconds(5)))
+                .maxIdleTime(duration(name, "max-idle-time", Duration.ofSeconds(30)))
+                .maxLifeTime(duration(name, "max-life-time", Duration.ofMinutes(5)))
+                .evictInBackground(duration(name, "evict-interval", Duration.ofSeconds(30)))
+                .metrics(true)
+                .build();
+    }
+
+    private Duration duration(String name, String key, Duration defaultValue) {
+        return environment.getProperty(PREFIX + name + "." + key, Duration.class, defaultValue);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+}
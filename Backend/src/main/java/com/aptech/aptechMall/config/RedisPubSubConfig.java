@@ -0,0 +1,26 @@
+package com.aptech.aptechMall.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Cấu hình Redis Pub/Sub dùng để đồng bộ cache giữa các node
+ *
+ * Các service tự đăng ký listener vào container này (addMessageListener) với channel riêng,
+ * ví dụ ExchangeRateService lắng nghe "exchange-rates:changed" để reload tỷ giá.
+ *
+ * Nếu Redis down, container tự retry subscribe - ứng dụng vẫn chạy bình thường,
+ * chỉ mất đồng bộ giữa các node cho đến khi Redis hoạt động lại.
+ */
+@Configuration
+public class RedisPubSubConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+}
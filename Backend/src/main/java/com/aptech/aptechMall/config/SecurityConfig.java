@@ -4,6 +4,7 @@ import com.aptech.aptechMall.security.filters.JwtAuthenticationFilter;
 import com.aptech.aptechMall.security.filters.TokenBlacklistFilter;
 import com.aptech.aptechMall.service.authentication.JpaUserDetailsService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
@@ -30,6 +31,9 @@ import org.springframework.web.filter.CorsFilter;
  * - Token blacklist với Redis (cho logout)
  * - CORS enabled cho React frontend
  *
+ * CATALOG CHAIN (@Order(0)): /api/aliexpress/**, /api/1688/**, /api/products/**
+ * - Chỉ CorsFilter, permitAll - không Redis, không JWT, không DB
+ *
  * FILTER CHAIN:
  * 1. CorsFilter - Cho phép React frontend truy cập API
  * 2. TokenBlacklistFilter - Kiểm tra JWT có trong blacklist không (đã logout)
@@ -68,6 +72,55 @@ public class SecurityConfig {
     private final CorsFilter corsFilter;
     private final TokenBlacklistFilter tokenBlacklistFilter;
 
+    /**
+     * Security Filter Chain riêng cho catalog công khai (xem sản phẩm)
+     *
+     * @Order(0) - Match trước apiFilterChain
+     *
+     * Catalog endpoints (/api/aliexpress/**, /api/1688/**, /api/products/**) là public và trả về Mono:
+     * - Không chạy TokenBlacklistFilter (Redis) và JwtAuthenticationFilter (JWT + DB)
+     * - Không SecurityContext persistence, không request cache, không anonymous filter
+     * - Async dispatch (khi Mono hoàn thành) đi qua chain tối thiểu này → giải phóng Tomcat thread nhanh
+     *
+     * @param http HttpSecurity để cấu hình
+     * @return SecurityFilterChain tối thiểu cho catalog
+     */
+    @Bean
+    @Order(0)
+    public SecurityFilterChain catalogFilterChain(HttpSecurity http) throws Exception {
+        return http
+                .securityMatcher("/api/aliexpress/**", "/api/1688/**", "/api/products/**")
+                .csrf(AbstractHttpConfigurer::disable)
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .securityContext(context -> context.requireExplicitSave(true))
+                .requestCache(AbstractHttpConfigurer::disable)
+                .anonymous(AbstractHttpConfigurer::disable)
+                .logout(AbstractHttpConfigurer::disable)
+                .authorizeHttpRequests(auth -> auth.anyRequest().permitAll())
+                .addFilterBefore(corsFilter, UsernamePasswordAuthenticationFilter.class)
+                .build();
+    }
+
+    /**
+     * Tắt auto-registration của JWT filters ở servlet container level
+     *
+     * Spring Boot tự đăng ký mọi Filter @Component cho TẤT CẢ URL (ngoài Security chain).
+     * Hai filter này chỉ nên chạy bên trong apiFilterChain.
+     */
+    @Bean
+    public FilterRegistrationBean<JwtAuthenticationFilter> jwtFilterRegistration(JwtAuthenticationFilter filter) {
+        FilterRegistrationBean<JwtAuthenticationFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    @Bean
+    public FilterRegistrationBean<TokenBlacklistFilter> tokenBlacklistFilterRegistration(TokenBlacklistFilter filter) {
+        FilterRegistrationBean<TokenBlacklistFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
     /**
      * Cấu hình Security Filter Chain cho API endpoints
      *
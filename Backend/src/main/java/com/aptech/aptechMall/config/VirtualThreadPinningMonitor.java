@@ -0,0 +1,87 @@
+package com.aptech.aptechMall.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Phát hiện virtual thread bị "pin" vào carrier thread (chỉ chạy khi bật virtual threads)
+ *
+ * Virtual thread bị pin khi block bên trong synchronized block / native call:
+ * carrier thread bị giữ lại → mất lợi ích của virtual threads (thường gặp với JDBC driver cũ, synchronized I/O).
+ *
+ * Cách hoạt động:
+ * - Dùng JFR event jdk.VirtualThreadPinned (JDK 21+) qua RecordingStream
+ * - Chỉ ghi nhận pin lâu hơn threshold (default 20ms)
+ * - Log WARN kèm top stack frame + metric jvm.threads.virtual.pinned
+ *
+ * Bật: spring.threads.virtual.enabled=true (cần chạy trên JDK 21+)
+ */
+@Slf4j
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final Counter pinnedCounter;
+    private RecordingStream recordingStream;
+
+    @Value("${app.threads.virtual.pinning-threshold:20ms}")
+    private Duration threshold;
+
+    @Value("${app.threads.virtual.pinning-stack-depth:8}")
+    private int stackDepth;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry) {
+        this.pinnedCounter = meterRegistry.counter("jvm.threads.virtual.pinned");
+    }
+
+    @PostConstruct
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Virtual thread pinning monitor started (threshold={})", threshold);
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+
+        StringBuilder frames = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            int depth = 0;
+            for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                if (depth++ >= stackDepth) {
+                    break;
+                }
+                frames.append("\n\tat ")
+                        .append(frame.getMethod().getType().getName())
+                        .append('.')
+                        .append(frame.getMethod().getName())
+                        .append(':')
+                        .append(frame.getLineNumber());
+            }
+        }
+        log.warn("Virtual thread pinned for {} ms{}", event.getDuration().toMillis(), frames);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.aptech.aptechMall.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.aptech.aptechMall.util.PageCursor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Một trang kết quả keyset pagination
+ *
+ * - nextCursor: gửi lại qua ?cursor= để lấy trang tiếp theo (null nếu hết)
+ * - totalCount: chỉ có khi client yêu cầu (?includeTotal=true) vì COUNT(*) tốn kém trên bảng lớn
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CursorPage<T> {
+    private List<T> items;
+    private String nextCursor;
+    private boolean hasNext;
+    private Long totalCount;
+
+    public <R> CursorPage<R> map(Function<? super T, ? extends R> mapper) {
+        return CursorPage.<R>builder()
+                .items(items.stream().<R>map(mapper).toList())
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .totalCount(totalCount)
+                .build();
+    }
+
+    /**
+     * @param slice Kết quả query keyset (Slice: lấy size + 1 dòng để biết còn trang sau, không COUNT)
+     * @param cursorOf Lấy (createdAt, id) của một dòng
+     * @param totalCount Tổng số dòng (null nếu client không yêu cầu)
+     */
+    public static <T> CursorPage<T> of(Slice<T> slice, Function<? super T, PageCursor> cursorOf, Long totalCount) {
+        List<T> content = slice.getContent();
+        String next = slice.hasNext() && !content.isEmpty()
+                ? cursorOf.apply(content.get(content.size() - 1)).encode()
+                : null;
+        return CursorPage.<T>builder()
+                .items(content)
+                .nextCursor(next)
+                .hasNext(slice.hasNext())
+                .totalCount(totalCount)
+                .build();
+    }
+}
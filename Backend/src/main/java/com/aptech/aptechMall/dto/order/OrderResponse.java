@@ -3,6 +3,8 @@ package com.aptech.aptechMall.dto.order;
 import com.aptech.aptechMall.entity.Order;
 import com.aptech.aptechMall.entity.OrderPaymentStatus;
 import com.aptech.aptechMall.entity.OrderStatus;
+import com.aptech.aptechMall.repository.OrderItemRepository.OrderItemTotals;
+import com.aptech.aptechMall.repository.OrderRepository.OrderSummary;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -32,6 +34,8 @@ public class OrderResponse {
     private String phone;
     private String note;
     private Integer totalItems;
+    private Integer itemCount; // Số dòng sản phẩm (list view)
+    private String thumbnail; // Ảnh sản phẩm đầu tiên (list view)
     private List<OrderItemDTO> items;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
@@ -122,4 +126,31 @@ public class OrderResponse {
                 .remainingAmount(order.getRemainingAmount())
                 .build();
     }
+
+    /**
+     * Convert list projection to summary DTO (same fields as toSummary, without touching entity associations)
+     * @param summary Order list columns
+     * @param totals Item aggregates of the order from the batched page query (null if the order has no items)
+     * @return OrderResponse
+     */
+    public static OrderResponse fromSummary(OrderSummary summary, OrderItemTotals totals) {
+        return OrderResponse.builder()
+                .id(summary.getId())
+                .userId(summary.getUserId())
+                .orderNumber(summary.getOrderNumber())
+                .status(summary.getStatus())
+                .totalAmount(summary.getTotalAmount())
+                .shippingAddress(summary.getShippingAddress())
+                .phone(summary.getPhone())
+                .note(summary.getNote())
+                .totalItems(totals != null ? totals.getTotalItems().intValue() : 0)
+                .itemCount(totals != null ? totals.getItemCount().intValue() : 0)
+                .thumbnail(totals != null ? totals.getThumbnail() : null)
+                .createdAt(summary.getCreatedAt())
+                .updatedAt(summary.getUpdatedAt())
+                .paymentStatus(summary.getPaymentStatus())
+                .depositAmount(summary.getDepositAmount())
+                .remainingAmount(summary.getRemainingAmount())
+                .build();
+    }
 }
@@ -29,4 +29,9 @@ public class TransactionFilterRequest {
     private Integer page = 0; // Page number (default 0)
 
     private Integer size = 20; // Page size (default 20)
+
+    private String cursor; // Keyset cursor from previous page (cursor endpoint only)
+
+    @Builder.Default
+    private Boolean includeTotal = false; // Also return total count (cursor endpoint only, costs a COUNT query)
 }
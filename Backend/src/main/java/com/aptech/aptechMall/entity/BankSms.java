@@ -17,9 +17,11 @@ import java.time.LocalDateTime;
  */
 @Entity
 @Table(name = "bank_sms",
+       uniqueConstraints = @UniqueConstraint(name = "uk_sms_transaction_reference", columnNames = "transaction_reference"),
        indexes = {
            @Index(name = "idx_sms_processed", columnList = "processed"),
-           @Index(name = "idx_sms_received_at", columnList = "received_at")
+           @Index(name = "idx_sms_received_at", columnList = "received_at"),
+           @Index(name = "idx_sms_pending", columnList = "processed, received_at, id")
        })
 @Data
 @NoArgsConstructor
@@ -62,6 +64,18 @@ public class BankSms {
     @Column(nullable = false)
     private boolean processed = false;
 
+    /**
+     * Claim token of the worker processing this SMS (null = not claimed)
+     */
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    /**
+     * Claim lease - after this time another worker may claim the SMS again
+     */
+    @Column(name = "claimed_until")
+    private LocalDateTime claimedUntil;
+
     /**
      * When the SMS was processed
      */
@@ -76,6 +90,7 @@ public class BankSms {
 
     /**
      * Parsed transaction reference from SMS
+     * Unique: written once per bank transaction, duplicate SMS keep null and record it in errorMessage
      */
     @Column(name = "transaction_reference", length = 100)
     private String transactionReference;
@@ -130,6 +145,14 @@ public class BankSms {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    /**
+     * Claim SMS for a worker until the given time
+     */
+    public void claim(String token, LocalDateTime until) {
+        this.claimToken = token;
+        this.claimedUntil = until;
+    }
+
     /**
      * Mark SMS as processed
      */
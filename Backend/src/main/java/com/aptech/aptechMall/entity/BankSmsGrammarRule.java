@@ -0,0 +1,96 @@
+package com.aptech.aptechMall.entity;
+
+import com.aptech.aptechMall.service.wallet.BankSmsGrammar;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Rule parse SMS ngân hàng (config table, hot reload bởi BankSmsGrammarRegistry)
+ *
+ * Các rule cùng bankCode tạo thành grammar của ngân hàng đó và THAY THẾ grammar built-in cùng tên.
+ * Example: bankCode=MBBANK, field=REFERENCE, regex="MBVCB\.[0-9]+\.[0-9]+", valueGroup=0
+ */
+@Entity
+@Table(name = "bank_sms_grammar_rules",
+       uniqueConstraints = @UniqueConstraint(name = "uk_grammar_rule", columnNames = {"bank_code", "rule_name"}),
+       indexes = @Index(name = "idx_grammar_rule_bank", columnList = "bank_code, priority"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BankSmsGrammarRule {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Grammar code: DEFAULT, MBBANK, STANDARD hoặc ngân hàng mới
+     */
+    @Column(name = "bank_code", nullable = false, length = 30)
+    private String bankCode;
+
+    @Column(name = "rule_name", nullable = false, length = 50)
+    private String ruleName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private BankSmsGrammar.Field field;
+
+    /**
+     * Regex chạy trên message đã uppercase
+     */
+    @Column(nullable = false, length = 500)
+    private String regex;
+
+    /**
+     * Group chứa giá trị (0 = toàn bộ match)
+     */
+    @Column(name = "value_group", nullable = false)
+    @Builder.Default
+    private int valueGroup = 1;
+
+    /**
+     * Tiền tố mã GD (REFERENCE), vd "GD"
+     */
+    @Column(length = 20)
+    private String prefix;
+
+    /**
+     * Hệ số nhân số tiền (AMOUNT), vd 1000 cho "500K"
+     */
+    @Column(precision = 12, scale = 2)
+    private BigDecimal multiplier;
+
+    /**
+     * Thứ tự ưu tiên trong cùng field (nhỏ hơn = thử trước)
+     */
+    @Column(nullable = false)
+    private int priority;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private boolean enabled = true;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public BankSmsGrammar.Rule toRule() {
+        return new BankSmsGrammar.Rule(ruleName, field, regex, valueGroup,
+                prefix != null ? prefix : "",
+                multiplier != null ? multiplier : BigDecimal.ONE);
+    }
+}
@@ -0,0 +1,34 @@
+package com.aptech.aptechMall.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Map sender SMS → grammar (config table, hot reload bởi BankSmsGrammarRegistry)
+ *
+ * Example: alias=NAMABANK, bankCode=NAMABANK → SMS có sender chứa "NAMABANK" dùng grammar NAMABANK
+ */
+@Entity
+@Table(name = "bank_sms_senders")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BankSmsSender {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Sender hoặc một phần của sender (so sánh không phân biệt hoa thường)
+     */
+    @Column(nullable = false, unique = true, length = 50)
+    private String alias;
+
+    @Column(name = "bank_code", nullable = false, length = 30)
+    private String bankCode;
+}
@@ -29,6 +29,10 @@ public class ExchangeRate {
     @Column(length = 50)
     private String source;
 
+    // Global sequence from ExchangeRateSequence on every write, identifies the rate set used by an order
+    @Column(name = "rate_version", unique = true)
+    private Long rateVersion;
+
     @Column(nullable = false)
     private LocalDateTime updatedAt;
 
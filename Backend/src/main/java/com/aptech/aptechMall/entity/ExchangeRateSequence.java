@@ -0,0 +1,29 @@
+package com.aptech.aptechMall.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Counter cấp rate_version cho ExchangeRate (1 dòng duy nhất, id = 1)
+ *
+ * Ghi tỷ giá khóa dòng này (SELECT ... FOR UPDATE) tới khi commit:
+ * - Không 2 transaction nào nhận cùng version
+ * - Version tăng theo đúng thứ tự commit → snapshot version N luôn chứa mọi thay đổi có version ≤ N
+ */
+@Entity
+@Table(name = "exchange_rate_sequence")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExchangeRateSequence {
+
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+
+    @Column(name = "last_version", nullable = false)
+    private Long lastVersion;
+}
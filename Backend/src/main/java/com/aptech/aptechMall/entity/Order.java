@@ -26,9 +26,11 @@ import java.util.List;
 @Table(name = "orders",
        indexes = {
            @Index(name = "idx_order_number", columnList = "orderNumber"),
-           @Index(name = "idx_user_id", columnList = "userId"),
-           @Index(name = "idx_status", columnList = "status"),
-           @Index(name = "idx_created_at", columnList = "createdAt")
+           @Index(name = "idx_created_at", columnList = "createdAt"),
+           // Listing filters + ORDER BY createdAt DESC, id DESC without filesort (see db/migration/V3)
+           @Index(name = "idx_user_created", columnList = "userId, createdAt, id"),
+           @Index(name = "idx_status_created", columnList = "status, createdAt, id"),
+           @Index(name = "idx_user_status_created", columnList = "userId, status, createdAt, id")
        })
 @Data
 @NoArgsConstructor
@@ -106,6 +108,10 @@ public class Order {
     @Column(name = "remaining_amount", precision = 10, scale = 2)
     private BigDecimal remainingAmount;
 
+    // Exchange rate set (ExchangeRateSnapshot version) used for the latest price/fee calculation
+    @Column(name = "exchange_rate_version")
+    private Long exchangeRateVersion;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "payment_status", length = 20)
     private OrderPaymentStatus paymentStatus = OrderPaymentStatus.PENDING_DEPOSIT;
@@ -0,0 +1,67 @@
+package com.aptech.aptechMall.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Checkpoint số dư ví sau một WalletTransaction (tạo định kỳ bởi WalletSnapshotService)
+ *
+ * Số dư tại thời điểm T = balance của snapshot gần nhất trước T + tổng thay đổi của các giao dịch sau snapshot
+ * → không phải cộng lại toàn bộ lịch sử giao dịch của ví
+ */
+@Entity
+@Table(name = "wallet_balance_snapshot",
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_snapshot_wallet_txn", columnNames = {"wallet_id", "last_transaction_id"})
+       },
+       indexes = {
+           @Index(name = "idx_snapshot_wallet_at", columnList = "wallet_id, snapshot_at")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WalletBalanceSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "wallet_id", nullable = false)
+    private Long walletId;
+
+    /**
+     * Giao dịch cuối cùng đã tính vào snapshot (id tăng dần theo thứ tự commit trong cùng một ví)
+     */
+    @Column(name = "last_transaction_id", nullable = false)
+    private Long lastTransactionId;
+
+    /**
+     * Số dư tính từ ledger (snapshot trước + tổng thay đổi)
+     */
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal balance;
+
+    /**
+     * Tổng số giao dịch của ví tính tới lastTransactionId
+     */
+    @Column(name = "transaction_count", nullable = false)
+    private long transactionCount;
+
+    /**
+     * createdAt của giao dịch cuối cùng - snapshot dùng được cho mọi thời điểm >= snapshotAt
+     */
+    @Column(name = "snapshot_at", nullable = false)
+    private LocalDateTime snapshotAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -24,7 +24,8 @@ import java.time.LocalDateTime;
            @Index(name = "idx_transaction_wallet_id", columnList = "wallet_id"),
            @Index(name = "idx_transaction_order_id", columnList = "order_id"),
            @Index(name = "idx_transaction_type", columnList = "transaction_type"),
-           @Index(name = "idx_transaction_created_at", columnList = "created_at")
+           @Index(name = "idx_transaction_created_at", columnList = "created_at"),
+           @Index(name = "idx_transaction_wallet_created", columnList = "wallet_id, created_at, id")
        })
 @Data
 @NoArgsConstructor
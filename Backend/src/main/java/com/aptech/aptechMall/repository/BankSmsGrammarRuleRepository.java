@@ -0,0 +1,19 @@
+package com.aptech.aptechMall.repository;
+
+import com.aptech.aptechMall.entity.BankSmsGrammarRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository interface for BankSmsGrammarRule entity
+ */
+@Repository
+public interface BankSmsGrammarRuleRepository extends JpaRepository<BankSmsGrammarRule, Long> {
+
+    /**
+     * Find enabled rules grouped by bank, in priority order
+     */
+    List<BankSmsGrammarRule> findByEnabledTrueOrderByBankCodeAscPriorityAscIdAsc();
+}
@@ -2,7 +2,9 @@ package com.aptech.aptechMall.repository;
 
 import com.aptech.aptechMall.entity.BankSms;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -24,6 +26,21 @@ public interface BankSmsRepository extends JpaRepository<BankSms, Long> {
            nativeQuery = true)
     List<BankSms> findUnprocessedSms(int limit);
 
+    /**
+     * Lock unprocessed, unclaimed (or lease expired) SMS, oldest first
+     *
+     * SKIP LOCKED: rows locked by another worker's claim transaction are skipped instead of waited on,
+     * so parallel workers/nodes take disjoint batches. Must be called inside a transaction.
+     *
+     * @param now Current time (claims with claimed_until before this are expired)
+     * @param limit Batch size
+     */
+    @Query(value = "SELECT * FROM bank_sms WHERE processed = false " +
+                   "AND (claimed_until IS NULL OR claimed_until < :now) " +
+                   "ORDER BY received_at ASC, id ASC LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<BankSms> lockClaimableSms(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
     /**
      * Find top 10 unprocessed SMS
      */
@@ -34,6 +51,14 @@ public interface BankSmsRepository extends JpaRepository<BankSms, Long> {
      */
     Optional<BankSms> findByTransactionReference(String reference);
 
+    /**
+     * Write the transaction reference of an SMS
+     * Throws DataIntegrityViolationException if another SMS already has it (unique index)
+     */
+    @Modifying
+    @Query("UPDATE BankSms s SET s.transactionReference = :reference WHERE s.id = :id")
+    int reserveTransactionReference(@Param("id") Long id, @Param("reference") String reference);
+
     /**
      * Check if SMS with transaction reference exists
      */
@@ -0,0 +1,12 @@
+package com.aptech.aptechMall.repository;
+
+import com.aptech.aptechMall.entity.BankSmsSender;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository interface for BankSmsSender entity
+ */
+@Repository
+public interface BankSmsSenderRepository extends JpaRepository<BankSmsSender, Long> {
+}
@@ -0,0 +1,30 @@
+package com.aptech.aptechMall.repository;
+
+import com.aptech.aptechMall.entity.ExchangeRateSequence;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface ExchangeRateSequenceRepository extends JpaRepository<ExchangeRateSequence, Integer> {
+
+    // SELECT ... FOR UPDATE; joins the caller's transaction so the lock is held until it commits
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Transactional
+    @Query("SELECT s FROM ExchangeRateSequence s WHERE s.id = :id")
+    Optional<ExchangeRateSequence> findForUpdate(@Param("id") Integer id);
+
+    // Creates the counter row once, starting after the highest version already handed out; no-op if it exists
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO exchange_rate_sequence (id, last_version) " +
+                   "SELECT :id, COALESCE(MAX(rate_version), 0) FROM exchange_rates", nativeQuery = true)
+    int insertIfAbsent(@Param("id") Integer id);
+}
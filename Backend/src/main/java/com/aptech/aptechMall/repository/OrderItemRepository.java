@@ -2,8 +2,11 @@ package com.aptech.aptechMall.repository;
 
 import com.aptech.aptechMall.entity.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -31,4 +34,25 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
      * @return Number of items
      */
     long countByOrderId(Long orderId);
+
+    /**
+     * List-page aggregates for a page of orders in one query (instead of loading each order's items)
+     * - totalItems: SUM(quantity), itemCount: number of lines, thumbnail: image of the first line
+     * @param orderIds Order IDs of the page
+     * @return One row per order that has items
+     */
+    @Query(value = "SELECT t.order_id AS orderId, t.total_items AS totalItems, t.item_count AS itemCount, " +
+                   "oi.product_image AS thumbnail " +
+                   "FROM (SELECT order_id, SUM(quantity) AS total_items, COUNT(*) AS item_count, MIN(id) AS first_item_id " +
+                   "      FROM order_items WHERE order_id IN (:orderIds) GROUP BY order_id) t " +
+                   "JOIN order_items oi ON oi.id = t.first_item_id",
+           nativeQuery = true)
+    List<OrderItemTotals> summarizeByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+    interface OrderItemTotals {
+        Long getOrderId();
+        Long getTotalItems();
+        Long getItemCount();
+        String getThumbnail();
+    }
 }
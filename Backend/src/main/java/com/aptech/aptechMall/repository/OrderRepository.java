@@ -1,15 +1,18 @@
 package com.aptech.aptechMall.repository;
 
 import com.aptech.aptechMall.entity.Order;
+import com.aptech.aptechMall.entity.OrderPaymentStatus;
 import com.aptech.aptechMall.entity.OrderStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -109,4 +112,147 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
      * @return Page of Orders
      */
     Page<Order> findAllByOrderByCreatedAtDesc(Pageable pageable);
+
+    /**
+     * Count orders by user ID and status
+     * @param userId User ID
+     * @param status Order status
+     * @return Number of orders
+     */
+    long countByUserIdAndStatus(Long userId, OrderStatus status);
+
+    // ==================== LISTING (summary projection) ====================
+    // Only list columns are selected: no Order hydration, no lazy items/statusHistory/payments.
+    // One query per filter combination so the SQL only holds the active filters and MySQL can use
+    // the matching composite index: (created_at, id), (user_id, ...), (status, ...), (user_id, status, ...).
+    // Keyset: rows strictly after cursor (createdAt, id); "createdAt <= :at" gives MySQL an index range,
+    // the OR only breaks ties on the same createdAt. Slice → no COUNT(*), fetches pageSize + 1 rows.
+    // Counts: count(), countByUserId, countByStatus, countByUserIdAndStatus.
+
+    String SUMMARY_SELECT = "SELECT o.id AS id, o.userId AS userId, o.orderNumber AS orderNumber, " +
+            "o.status AS status, o.totalAmount AS totalAmount, o.shippingAddress AS shippingAddress, " +
+            "o.phone AS phone, o.note AS note, o.createdAt AS createdAt, o.updatedAt AS updatedAt, " +
+            "o.paymentStatus AS paymentStatus, o.depositAmount AS depositAmount, " +
+            "o.remainingAmount AS remainingAmount FROM Order o";
+
+    String SUMMARY_ORDER = " ORDER BY o.createdAt DESC, o.id DESC";
+
+    String BEFORE_CURSOR = "o.createdAt <= :at AND (o.createdAt < :at OR o.id < :id)";
+
+    /**
+     * All order summaries, offset pagination
+     * @param pageable Pagination information
+     * @return Page of summaries ordered by createdAt DESC, id DESC
+     */
+    @Query(value = SUMMARY_SELECT + SUMMARY_ORDER,
+           countQuery = "SELECT COUNT(o) FROM Order o")
+    Page<OrderSummary> findSummaries(Pageable pageable);
+
+    /**
+     * Order summaries of a user, offset pagination
+     * @param userId User ID
+     * @param pageable Pagination information
+     * @return Page of summaries ordered by createdAt DESC, id DESC
+     */
+    @Query(value = SUMMARY_SELECT + " WHERE o.userId = :userId" + SUMMARY_ORDER,
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.userId = :userId")
+    Page<OrderSummary> findSummariesByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Order summaries with a status, offset pagination
+     * @param status Order status
+     * @param pageable Pagination information
+     * @return Page of summaries ordered by createdAt DESC, id DESC
+     */
+    @Query(value = SUMMARY_SELECT + " WHERE o.status = :status" + SUMMARY_ORDER,
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.status = :status")
+    Page<OrderSummary> findSummariesByStatus(@Param("status") OrderStatus status, Pageable pageable);
+
+    /**
+     * Order summaries of a user with a status, offset pagination
+     * @param userId User ID
+     * @param status Order status
+     * @param pageable Pagination information
+     * @return Page of summaries ordered by createdAt DESC, id DESC
+     */
+    @Query(value = SUMMARY_SELECT + " WHERE o.userId = :userId AND o.status = :status" + SUMMARY_ORDER,
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.userId = :userId AND o.status = :status")
+    Page<OrderSummary> findSummariesByUserIdAndStatus(@Param("userId") Long userId,
+                                                      @Param("status") OrderStatus status,
+                                                      Pageable pageable);
+
+    /**
+     * All order summaries after a keyset cursor
+     * @param at Cursor createdAt
+     * @param id Cursor id
+     * @param pageable Page size only (page number must be 0)
+     * @return Slice of summaries ordered by createdAt DESC, id DESC
+     */
+    @Query(SUMMARY_SELECT + " WHERE " + BEFORE_CURSOR + SUMMARY_ORDER)
+    Slice<OrderSummary> findSummariesBefore(@Param("at") LocalDateTime at,
+                                            @Param("id") Long id,
+                                            Pageable pageable);
+
+    /**
+     * Order summaries of a user after a keyset cursor
+     * @param userId User ID
+     * @param at Cursor createdAt
+     * @param id Cursor id
+     * @param pageable Page size only (page number must be 0)
+     * @return Slice of summaries ordered by createdAt DESC, id DESC
+     */
+    @Query(SUMMARY_SELECT + " WHERE o.userId = :userId AND " + BEFORE_CURSOR + SUMMARY_ORDER)
+    Slice<OrderSummary> findSummariesByUserIdBefore(@Param("userId") Long userId,
+                                                    @Param("at") LocalDateTime at,
+                                                    @Param("id") Long id,
+                                                    Pageable pageable);
+
+    /**
+     * Order summaries with a status after a keyset cursor
+     * @param status Order status
+     * @param at Cursor createdAt
+     * @param id Cursor id
+     * @param pageable Page size only (page number must be 0)
+     * @return Slice of summaries ordered by createdAt DESC, id DESC
+     */
+    @Query(SUMMARY_SELECT + " WHERE o.status = :status AND " + BEFORE_CURSOR + SUMMARY_ORDER)
+    Slice<OrderSummary> findSummariesByStatusBefore(@Param("status") OrderStatus status,
+                                                    @Param("at") LocalDateTime at,
+                                                    @Param("id") Long id,
+                                                    Pageable pageable);
+
+    /**
+     * Order summaries of a user with a status after a keyset cursor
+     * @param userId User ID
+     * @param status Order status
+     * @param at Cursor createdAt
+     * @param id Cursor id
+     * @param pageable Page size only (page number must be 0)
+     * @return Slice of summaries ordered by createdAt DESC, id DESC
+     */
+    @Query(SUMMARY_SELECT + " WHERE o.userId = :userId AND o.status = :status AND " + BEFORE_CURSOR + SUMMARY_ORDER)
+    Slice<OrderSummary> findSummariesByUserIdAndStatusBefore(@Param("userId") Long userId,
+                                                             @Param("status") OrderStatus status,
+                                                             @Param("at") LocalDateTime at,
+                                                             @Param("id") Long id,
+                                                             Pageable pageable);
+
+    /**
+     * List columns of an order (no associations)
+     */
+    interface OrderSummary {
+        Long getId();
+        Long getUserId();
+        String getOrderNumber();
+        OrderStatus getStatus();
+        BigDecimal getTotalAmount();
+        String getShippingAddress();
+        String getPhone();
+        String getNote();
+        LocalDateTime getCreatedAt();
+        LocalDateTime getUpdatedAt();
+        OrderPaymentStatus getPaymentStatus();
+        BigDecimal getDepositAmount();
+        BigDecimal getRemainingAmount();
+    }
 }
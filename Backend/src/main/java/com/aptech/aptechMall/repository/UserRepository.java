@@ -5,8 +5,11 @@ import com.aptech.aptechMall.security.Role;
 import com.aptech.aptechMall.security.Status;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -32,6 +35,21 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
 
+    /**
+     * Bulk lookup by username or email (same matching as findByUsername)
+     * @param identifiers Usernames / deposit codes
+     * @return id, username, email of matching users
+     */
+    @Query("SELECT u.userId AS userId, u.username AS username, u.email AS email FROM User u " +
+           "WHERE u.username IN :identifiers OR u.email IN :identifiers")
+    List<UserIdentity> findIdentitiesByUsernameOrEmailIn(@Param("identifiers") Collection<String> identifiers);
+
+    @Query("SELECT u.userId AS userId, u.username AS username, u.email AS email FROM User u WHERE u.userId IN :ids")
+    List<UserIdentity> findIdentitiesByUserIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT u.userId AS userId, u.username AS username, u.email AS email FROM User u WHERE u.email IN :emails")
+    List<UserIdentity> findIdentitiesByEmailIn(@Param("emails") Collection<String> emails);
+
     /**
      * Count users by status
      * @param status User status (ACTIVE, SUSPENDED, DELETED)
@@ -45,4 +63,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return Number of users with the given role
      */
     long countByRole(Role role);
+
+    /**
+     * Identifier columns only (no full User hydration)
+     */
+    interface UserIdentity {
+        Long getUserId();
+        String getUsername();
+        String getEmail();
+    }
 }
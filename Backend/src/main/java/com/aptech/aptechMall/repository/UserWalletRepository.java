@@ -2,7 +2,9 @@ package com.aptech.aptechMall.repository;
 
 import com.aptech.aptechMall.entity.UserWallet;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
@@ -50,4 +52,34 @@ public interface UserWalletRepository extends JpaRepository<UserWallet, Long> {
      */
     @Query("SELECT SUM(w.balance) FROM UserWallet w")
     BigDecimal sumAllBalances();
+
+    /**
+     * Atomically add funds (single UPDATE, no read-modify-write)
+     * @param walletId Wallet ID
+     * @param amount Amount to add (positive)
+     * @return 1 if applied, 0 if wallet is locked or missing
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE UserWallet w SET w.balance = w.balance + :amount, w.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE w.id = :walletId AND w.isLocked = false")
+    int creditBalance(@Param("walletId") Long walletId, @Param("amount") BigDecimal amount);
+
+    /**
+     * Atomically deduct funds only if the balance covers the amount
+     * @param walletId Wallet ID
+     * @param amount Amount to deduct (positive)
+     * @return 1 if applied, 0 if wallet is locked, missing or has insufficient balance
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE UserWallet w SET w.balance = w.balance - :amount, w.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE w.id = :walletId AND w.isLocked = false AND w.balance >= :amount")
+    int debitBalance(@Param("walletId") Long walletId, @Param("amount") BigDecimal amount);
+
+    /**
+     * Read current balance straight from the database (bypasses the persistence context)
+     * @param walletId Wallet ID
+     * @return Current balance
+     */
+    @Query("SELECT w.balance FROM UserWallet w WHERE w.id = :walletId")
+    BigDecimal findBalanceById(@Param("walletId") Long walletId);
 }
@@ -0,0 +1,31 @@
+package com.aptech.aptechMall.repository;
+
+import com.aptech.aptechMall.entity.WalletBalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Repository interface for WalletBalanceSnapshot entity
+ */
+@Repository
+public interface WalletBalanceSnapshotRepository extends JpaRepository<WalletBalanceSnapshot, Long> {
+
+    /**
+     * Latest snapshot of a wallet
+     * @param walletId Wallet ID
+     * @return Optional containing the snapshot
+     */
+    Optional<WalletBalanceSnapshot> findFirstByWalletIdOrderByLastTransactionIdDesc(Long walletId);
+
+    /**
+     * Latest snapshot taken at or before a point in time
+     * @param walletId Wallet ID
+     * @param at Point in time
+     * @return Optional containing the snapshot
+     */
+    Optional<WalletBalanceSnapshot> findFirstByWalletIdAndSnapshotAtLessThanEqualOrderByLastTransactionIdDesc(
+            Long walletId, LocalDateTime at);
+}
@@ -4,11 +4,13 @@ import com.aptech.aptechMall.entity.TransactionType;
 import com.aptech.aptechMall.entity.WalletTransaction;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -58,4 +60,92 @@ public interface WalletTransactionRepository extends JpaRepository<WalletTransac
             @Param("startDate") LocalDateTime startDate,
             @Param("endDate") LocalDateTime endDate,
             Pageable pageable);
+
+    /**
+     * Transactions of a wallet in [since, cursor) ordered by (createdAt DESC, id DESC) - keyset pagination, no COUNT(*)
+     * @param walletId Wallet ID
+     * @param since Inclusive lower bound on createdAt
+     * @param at Cursor createdAt (or end of date range on the first page)
+     * @param id Cursor id (Long.MAX_VALUE on the first page)
+     * @param pageable Page size only (page number must be 0)
+     * @return Slice of transactions
+     */
+    @Query("SELECT wt FROM WalletTransaction wt WHERE wt.wallet.id = :walletId " +
+           "AND wt.createdAt >= :since AND wt.createdAt <= :at AND (wt.createdAt < :at OR wt.id < :id) " +
+           "ORDER BY wt.createdAt DESC, wt.id DESC")
+    Slice<WalletTransaction> findByWalletIdBefore(@Param("walletId") Long walletId,
+                                                  @Param("since") LocalDateTime since,
+                                                  @Param("at") LocalDateTime at,
+                                                  @Param("id") Long id,
+                                                  Pageable pageable);
+
+    /**
+     * Same as {@link #findByWalletIdBefore} filtered by transaction type
+     */
+    @Query("SELECT wt FROM WalletTransaction wt WHERE wt.wallet.id = :walletId AND wt.transactionType = :type " +
+           "AND wt.createdAt >= :since AND wt.createdAt <= :at AND (wt.createdAt < :at OR wt.id < :id) " +
+           "ORDER BY wt.createdAt DESC, wt.id DESC")
+    Slice<WalletTransaction> findByWalletIdAndTypeBefore(@Param("walletId") Long walletId,
+                                                         @Param("type") TransactionType type,
+                                                         @Param("since") LocalDateTime since,
+                                                         @Param("at") LocalDateTime at,
+                                                         @Param("id") Long id,
+                                                         Pageable pageable);
+
+    long countByWalletIdAndCreatedAtBetween(Long walletId, LocalDateTime startDate, LocalDateTime endDate);
+
+    long countByWalletIdAndTransactionTypeAndCreatedAtBetween(
+            Long walletId, TransactionType transactionType, LocalDateTime startDate, LocalDateTime endDate);
+
+    /**
+     * Net balance change of transactions in (afterId, upToId]
+     * @param walletId Wallet ID
+     * @param afterId Exclusive lower bound (last transaction of the previous snapshot, 0 if none)
+     * @param upToId Inclusive upper bound
+     * @return Sum of balance changes (0 if none)
+     */
+    @Query("SELECT COALESCE(SUM(wt.balanceAfter - wt.balanceBefore), 0) FROM WalletTransaction wt " +
+           "WHERE wt.wallet.id = :walletId AND wt.id > :afterId AND wt.id <= :upToId")
+    BigDecimal sumBalanceChangesInRange(@Param("walletId") Long walletId,
+                                        @Param("afterId") Long afterId,
+                                        @Param("upToId") Long upToId);
+
+    /**
+     * Net balance change of transactions after a given transaction, up to a point in time
+     * @param walletId Wallet ID
+     * @param afterId Exclusive lower bound (0 if none)
+     * @param at Inclusive upper bound on createdAt
+     * @return Sum of balance changes (0 if none)
+     */
+    @Query("SELECT COALESCE(SUM(wt.balanceAfter - wt.balanceBefore), 0) FROM WalletTransaction wt " +
+           "WHERE wt.wallet.id = :walletId AND wt.id > :afterId AND wt.createdAt <= :at")
+    BigDecimal sumBalanceChangesAfter(@Param("walletId") Long walletId,
+                                      @Param("afterId") Long afterId,
+                                      @Param("at") LocalDateTime at);
+
+    /**
+     * Count transactions in (afterId, upToId]
+     */
+    @Query("SELECT COUNT(wt) FROM WalletTransaction wt " +
+           "WHERE wt.wallet.id = :walletId AND wt.id > :afterId AND wt.id <= :upToId")
+    long countInRange(@Param("walletId") Long walletId,
+                      @Param("afterId") Long afterId,
+                      @Param("upToId") Long upToId);
+
+    /**
+     * Wallets that have transactions since a point in time, with their latest transaction id
+     * @param since Lower bound on createdAt
+     * @return One row per wallet
+     */
+    @Query("SELECT wt.wallet.id AS walletId, MAX(wt.id) AS lastTransactionId FROM WalletTransaction wt " +
+           "WHERE wt.createdAt >= :since GROUP BY wt.wallet.id")
+    List<WalletHead> findWalletHeadsSince(@Param("since") LocalDateTime since);
+
+    /**
+     * Latest transaction of a wallet (projection, no entity hydration)
+     */
+    interface WalletHead {
+        Long getWalletId();
+        Long getLastTransactionId();
+    }
 }
@@ -1,7 +1,10 @@
 package com.aptech.aptechMall.security.filters;
 
+import com.aptech.aptechMall.model.jpa.User;
 import com.aptech.aptechMall.service.authentication.JpaUserDetailsService;
 import com.aptech.aptechMall.service.authentication.JwtService;
+import com.aptech.aptechMall.service.authentication.PrincipalCache;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -12,6 +15,7 @@ import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -30,7 +34,8 @@ import java.io.IOException;
  * CHỨC NĂNG CHÍNH:
  * - Trích xuất JWT token từ Authorization header
  * - Validate JWT token (signature, expiration)
- * - Load user details từ database
+ * - Build principal từ claims (userId, role, status) qua PrincipalCache - KHÔNG query database
+ *   (token cũ thiếu claims → fallback load user từ database)
  * - Set Authentication vào SecurityContext
  * - Skip validation cho public endpoints
  *
@@ -39,9 +44,9 @@ import java.io.IOException;
  * 2. Lấy Authorization header từ request
  * 3. Kiểm tra header có format "Bearer <token>" không
  * 4. Extract JWT token (bỏ "Bearer " prefix)
- * 5. Extract username từ token
- * 6. Load UserDetails từ database
- * 7. Validate token với UserDetails
+ * 5. Parse + verify token MỘT lần (JwtService.parseAndValidate), lấy username từ claims
+ * 6. Lấy principal từ PrincipalCache (build từ claims khi miss)
+ * 7. Validate token với principal
  * 8. Tạo Authentication object và set vào SecurityContext
  * 9. Continue filter chain
  *
@@ -67,6 +72,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final JpaUserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
 
     /**
      * Xử lý mỗi HTTP request để validate JWT token
@@ -95,6 +101,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         // === STEP 2: Lấy Authorization header ===
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
+        final Claims claims;
         final String username;
 
         try {
@@ -108,15 +115,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
             // === STEP 4: Extract JWT token (bỏ "Bearer " prefix) ===
             jwt = authHeader.substring(7); // "Bearer " có 7 ký tự
-            username = jwtService.extractUsername(jwt); // Extract username/email từ token
+            // Parse + verify signature + expiration (1 lần) - dùng lại Claims từ TokenBlacklistFilter nếu có
+            Object parsed = request.getAttribute(JwtService.CLAIMS_ATTRIBUTE);
+            claims = parsed instanceof Claims verified ? verified : jwtService.parseAndValidate(jwt);
+            username = claims.getSubject(); // Username/email
 
             // === STEP 5: Validate token và set Authentication ===
             if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                // Load user details từ database
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+                // Principal từ claims (cache theo userId), không query database
+                UserDetails userDetails = resolvePrincipal(claims, username);
 
-                // Validate token: check signature và expiration
-                if (jwtService.validateToken(jwt, userDetails)) {
+                // Validate token: subject khớp principal và chưa hết hạn (signature đã verify ở trên)
+                if (jwtService.validateToken(claims, userDetails)) {
                     // Tạo Authentication object
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
@@ -152,4 +162,24 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return; // KHÔNG tiếp tục filter chain
         }
     }
+
+    /**
+     * Lấy principal cho token
+     *
+     * - Token có đủ claims → PrincipalCache (build từ claims khi miss)
+     * - Token cũ thiếu claims → load từ database như trước
+     * - User đã bị xóa → UsernameNotFoundException (401)
+     */
+    private UserDetails resolvePrincipal(Claims claims, String username) {
+        User fromClaims = jwtService.extractPrincipal(claims);
+        if (fromClaims == null) {
+            return userDetailsService.loadUserByUsername(username);
+        }
+
+        User principal = principalCache.get(fromClaims.getUserId(), () -> fromClaims);
+        if (!principal.isAccountNonExpired()) {
+            throw new UsernameNotFoundException("Không tìm thấy người dùng: " + username);
+        }
+        return principal;
+    }
 }
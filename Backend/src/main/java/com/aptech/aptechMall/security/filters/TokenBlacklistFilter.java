@@ -1,6 +1,9 @@
 package com.aptech.aptechMall.security.filters;
 
-import com.aptech.aptechMall.service.authentication.RedisService;
+import com.aptech.aptechMall.service.authentication.JwtService;
+import com.aptech.aptechMall.service.authentication.TokenBlacklistService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -23,14 +26,20 @@ import java.io.IOException;
  * 4. UsernamePasswordAuthenticationFilter - Spring Security default
  *
  * CHỨC NĂNG CHÍNH:
- * - Kiểm tra JWT token có trong Redis blacklist không
+ * - Kiểm tra JWT token có trong blacklist không (bloom filter local, chỉ hỏi Redis khi bloom báo "có thể có")
  * - Reject request nếu token đã bị blacklist (user đã logout)
  * - Skip check cho public endpoints
  *
+ * PARSE TOKEN:
+ * - Token được parse + verify MỘT lần ở đây để lấy jti / userId / iat
+ * - Claims được lưu vào request attribute JwtService.CLAIMS_ATTRIBUTE → JwtAuthenticationFilter dùng lại
+ * - Token invalid/hết hạn → bỏ qua blacklist check, JwtAuthenticationFilter trả về 401
+ *
  * CÁCH HOẠT ĐỘNG:
  * Khi user logout:
  * 1. AuthService thêm access token vào Redis với TTL
- * 2. TokenBlacklistFilter check Redis trước mỗi request
+ * 2. TokenBlacklistFilter check bloom filter local → Redis chỉ khi bloom báo "có thể có"
+ *    (xem TokenBlacklistService)
  * 3. Nếu token có trong Redis → reject với 401 Unauthorized
  * 4. Nếu không có → tiếp tục filter chain
  *
@@ -54,7 +63,8 @@ import java.io.IOException;
 @RequiredArgsConstructor
 public class TokenBlacklistFilter extends OncePerRequestFilter {
 
-    private final RedisService redisService;
+    private final TokenBlacklistService tokenBlacklistService;
+    private final JwtService jwtService;
 
     /**
      * Kiểm tra JWT token có trong blacklist không
@@ -89,15 +99,20 @@ public class TokenBlacklistFilter extends OncePerRequestFilter {
             try {
                 // Extract JWT token (bỏ "Bearer " prefix - 7 ký tự)
                 String jwtToken = token.substring(7);
+                Claims claims = jwtService.parseAndValidate(jwtToken);
+                request.setAttribute(JwtService.CLAIMS_ATTRIBUTE, claims);
 
-                // Kiểm tra Redis blacklist
-                if(redisService.hasToken(jwtToken)) {
+                // Kiểm tra blacklist (watermark → bloom filter → Redis)
+                if(tokenBlacklistService.isBlacklisted(claims, jwtToken)) {
                     // Token có trong blacklist = user đã logout
                     // Reject request với 401 Unauthorized
                     response.getWriter().write("Token is blacklisted");
                     response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token is blacklisted");
                     return; // KHÔNG tiếp tục filter chain
                 }
+            } catch (JwtException e) {
+                // Token invalid/hết hạn → JwtAuthenticationFilter sẽ trả về 401
+                log.debug("Skipping blacklist check for invalid token: {}", e.getMessage());
             } catch (Exception e) {
                 // Redis không available - log warning nhưng TIẾP TỤC
                 // Không block toàn bộ hệ thống nếu Redis down
@@ -1,13 +1,20 @@
 package com.aptech.aptechMall.service;
 
+import com.aptech.aptechMall.config.HttpClientFactory;
 import com.aptech.aptechMall.dto.ProductDetailDTO;
 import com.aptech.aptechMall.dto.ProductSearchDTO;
+import com.aptech.aptechMall.entity.Marketplace;
 import com.aptech.aptechMall.model.Aliexpress.AliexpressProductSearchResponse;
 import com.aptech.aptechMall.model.Aliexpress.AliexpressProductDetailResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.aptech.aptechMall.service.marketplace.JsonProjection;
+import com.aptech.aptechMall.service.marketplace.OtApiResponseDecoder;
+import com.aptech.aptechMall.service.marketplace.ProductDetailCache;
+import com.aptech.aptechMall.service.marketplace.RequestCoalescer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -15,14 +22,73 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
 public class AliExpressService implements ProductMarketplaceService {
 
+    private static final String DTO_CACHE_PREFIX = "dto:";
+    private static final String REVIEWS_PATH = "Result.ProviderReviews.Content";
+
+    /**
+     * Fields of /BatchGetItemFullInfo used by toProductDetailDTO - everything else is skipped while decoding
+     */
+    private static final JsonProjection DETAIL_DTO_PROJECTION = JsonProjection.builder()
+            .include("ErrorCode")
+            .include("Result.Item.Id")
+            .include("Result.Item.Title")
+            .include("Result.Item.OriginalTitle")
+            .include("Result.Item.Description")
+            .include("Result.Item.ExternalItemUrl")
+            .include("Result.Item.MainPictureUrl")
+            .include("Result.Item.CategoryId")
+            .include("Result.Item.BrandName")
+            .include("Result.Item.MasterQuantity")
+            .include("Result.Item.Pictures")
+            .include("Result.Item.Price")
+            .include("Result.Item.PromotionPrice")
+            .include("Result.Item.FeaturedValues")
+            .include("Result.Item.PhysicalParameters")
+            .include("Result.Item.Attributes.Pid")
+            .include("Result.Item.Attributes.Vid")
+            .include("Result.Item.Attributes.PropertyName")
+            .include("Result.Item.Attributes.Value")
+            .limit("Result.Item.ConfiguredItems", 10)
+            .include("Result.Item.ConfiguredItems.Id")
+            .include("Result.Item.ConfiguredItems.Quantity")
+            .include("Result.Item.ConfiguredItems.Configurators")
+            .include("Result.Item.ConfiguredItems.Price.OriginalPrice")
+            .include("Result.Vendor.Id")
+            .include("Result.Vendor.Name")
+            .include("Result.Vendor.DisplayName")
+            .include("Result.Vendor.DisplayPictureUrl")
+            .include("Result.Vendor.Credit")
+            .include("Result.Vendor.FeaturedValues")
+            .include("Result.RootPath.Content.Name")
+            .limit("Result.VendorItems.Content", 10)
+            .include("Result.VendorItems.Content.Id")
+            .include("Result.VendorItems.Content.Title")
+            .include("Result.VendorItems.Content.MainPictureUrl")
+            .include("Result.VendorItems.Content.ExternalItemUrl")
+            .include("Result.VendorItems.Content.Price")
+            .limit(REVIEWS_PATH, 5)
+            .include(REVIEWS_PATH + ".ExternalId")
+            .include(REVIEWS_PATH + ".UserNick")
+            .include(REVIEWS_PATH + ".Rating")
+            .include(REVIEWS_PATH + ".Content")
+            .include(REVIEWS_PATH + ".CreatedDate")
+            .include(REVIEWS_PATH + ".Images")
+            .include(REVIEWS_PATH + ".FeaturedValues")
+            .build();
+
     private final WebClient webClient;
-    private final ObjectMapper objectMapper;
+    private final ProductDetailCache productDetailCache;
+    private final RequestCoalescer requestCoalescer;
+    private final OtApiResponseDecoder otApiResponseDecoder;
 
     @Value("${rapidapi.aliexpress.key}")
     private String apiKey;
@@ -32,31 +98,79 @@ public class AliExpressService implements ProductMarketplaceService {
 
     public AliExpressService(
             @Value("${rapidapi.aliexpress.base-url}") String baseUrl,
-            ObjectMapper objectMapper) {
+            ProductDetailCache productDetailCache,
+            RequestCoalescer requestCoalescer,
+            OtApiResponseDecoder otApiResponseDecoder,
+            HttpClientFactory httpClientFactory) {
 
-        // Increase buffer size to 10MB to handle large API responses
+        // Success bodies are streamed by OtApiResponseDecoder (never joined in memory), so the codec
+        // buffer only holds String bodies: upstream error bodies and review pages
         ExchangeStrategies strategies = ExchangeStrategies.builder()
                 .codecs(configurer -> configurer
                         .defaultCodecs()
-                        .maxInMemorySize(10 * 1024 * 1024)) // 10MB
+                        .maxInMemorySize(1024 * 1024)) // 1MB
                 .build();
 
+        // Dedicated connection pool so a slow upstream cannot exhaust the other marketplace's connections
         this.webClient = WebClient.builder()
                 .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClientFactory.create("aliexpress")))
                 .exchangeStrategies(strategies)
                 .defaultHeader("Accept", "application/json")
                 .defaultHeader("Content-Type", "application/json")
                 .build();
-        this.objectMapper = objectMapper;
+        this.productDetailCache = productDetailCache;
+        this.requestCoalescer = requestCoalescer;
+        this.otApiResponseDecoder = otApiResponseDecoder;
 
-        log.info("WebClient initialized with 10MB buffer size for large API responses");
+        log.info("WebClient initialized (streaming JSON decoding, 1MB buffer for String bodies)");
     }
 
     /**
      * Get product details by ID with detailed logging (full response) - NEW OtAPI FORMAT
      * Uses: https://otapi-aliexpress.p.rapidapi.com/BatchGetItemFullInfo
+     * Served through ProductDetailCache (local + Redis, stale-while-revalidate)
      */
     public Mono<AliexpressProductDetailResponse> getProductDetailsFull(String productId) {
+        return productDetailCache.get(Marketplace.ALIEXPRESS, productId, AliexpressProductDetailResponse.class,
+                () -> requestCoalescer.execute(Marketplace.ALIEXPRESS, "/BatchGetItemFullInfo",
+                        List.of(productId), () -> fetchProductDetailsFull(productId)));
+    }
+
+    /**
+     * Call upstream /BatchGetItemFullInfo directly (bypasses cache)
+     */
+    private Mono<AliexpressProductDetailResponse> fetchProductDetailsFull(String productId) {
+        return requestItemFullInfo(productId)
+                .bodyToFlux(DataBuffer.class)  // Streamed into the DTO, no raw String kept
+                .as(body -> otApiResponseDecoder.decode(body, AliexpressProductDetailResponse.class,
+                        "OtAPI product " + productId))
+                .flatMap(response -> {
+                    // Check for API error
+                    if (!"Ok".equalsIgnoreCase(response.getErrorCode())) {
+                        log.error("OtAPI returned error: {}", response.getErrorCode());
+                        return Mono.error(new RuntimeException("OtAPI Error: " + response.getErrorCode()));
+                    }
+
+                    log.info("Successfully parsed product details (OtAPI) for ID: {}", productId);
+                    return Mono.just(response);
+                })
+                .timeout(Duration.ofSeconds(30))
+                .doOnError(WebClientResponseException.class, error ->
+                        log.error("WebClient error getting product details (OtAPI): Status={}, Body={}",
+                                error.getStatusCode(), error.getResponseBodyAsString()))
+                .doOnError(error ->
+                        log.error("Error getting product details (OtAPI) for ID {}: {}", productId, error.getMessage(), error));
+    }
+
+
+
+
+
+    /**
+     * Build /BatchGetItemFullInfo request with upstream error handling
+     */
+    private WebClient.ResponseSpec requestItemFullInfo(String productId) {
         log.info("Getting product details (OtAPI) for ID: {}", productId);
 
         return webClient.get()
@@ -75,44 +189,9 @@ public class AliExpressService implements ProductMarketplaceService {
                                 log.error("Error body: {}", errorBody);
                                 return Mono.error(new RuntimeException("OtAPI Error: " + errorBody));
                             });
-                })
-                .bodyToMono(String.class)  // Get as String first for debugging
-                .doOnNext(jsonString -> {
-                    log.debug("Raw JSON response (OtAPI) for product {}: {}", productId,
-                            jsonString.substring(0, Math.min(500, jsonString.length())) + "...");
-                })
-                .flatMap(jsonString -> {
-                    try {
-                        // Parse JSON string to new OtAPI model
-                        AliexpressProductDetailResponse response = objectMapper.readValue(
-                                jsonString, AliexpressProductDetailResponse.class);
-
-                        // Check for API error
-                        if (!"Ok".equalsIgnoreCase(response.getErrorCode())) {
-                            log.error("OtAPI returned error: {}", response.getErrorCode());
-                            return Mono.error(new RuntimeException("OtAPI Error: " + response.getErrorCode()));
-                        }
-
-                        log.info("Successfully parsed product details (OtAPI) for ID: {}", productId);
-                        return Mono.just(response);
-                    } catch (Exception e) {
-                        log.error("Error parsing OtAPI JSON for product {}: {}", productId, e.getMessage());
-                        log.error("Problematic JSON: {}", jsonString);
-                        return Mono.error(new RuntimeException("JSON parsing error: " + e.getMessage(), e));
-                    }
-                })
-                .timeout(Duration.ofSeconds(30))
-                .doOnError(WebClientResponseException.class, error ->
-                        log.error("WebClient error getting product details (OtAPI): Status={}, Body={}",
-                                error.getStatusCode(), error.getResponseBodyAsString()))
-                .doOnError(error ->
-                        log.error("Error getting product details (OtAPI) for ID {}: {}", productId, error.getMessage(), error));
+                });
     }
 
-
-
-
-
     /**
      * Search products and return simplified DTO
      * Implementation of ProductMarketplaceService interface
@@ -156,275 +235,309 @@ public class AliExpressService implements ProductMarketplaceService {
     /**
      * Get product details as simplified DTO - NEW OtAPI FORMAT
      * Implementation of ProductMarketplaceService interface
+     *
+     * Uses a projected decode of /BatchGetItemFullInfo: only the fields used by ProductDetailDTO are
+     * kept while streaming (10 variants, 5 reviews, 10 related items), the rest is never bound.
+     * The resulting DTO is cached separately from the full response.
      */
     @Override
     public Mono<ProductDetailDTO> getProductDetails(String productId) {
         log.info("Getting simplified product details (OtAPI) for ID: {}", productId);
 
-        return getProductDetailsFull(productId)
-                .map(response -> {
-                    try {
-                        if (response == null || response.getResult() == null) {
-                            log.error("Response or result is null for product ID: {}", productId);
-                            throw new RuntimeException("Invalid response from OtAPI");
-                        }
-
-                        var item = response.getResult().getItem();
-                        if (item == null) {
-                            log.error("Item is null for product ID: {}", productId);
-                            throw new RuntimeException("Product item not found");
-                        }
-
-                        var vendor = response.getResult().getVendor();
-                        var rootPath = response.getResult().getRootPath();
-                        var vendorItems = response.getResult().getVendorItems();
-                        var providerReviews = response.getResult().getProviderReviews();
-
-                        // === BASIC INFO ===
-                        String itemId = item.getId();
-                        String title = item.getTitle();
-                        String originalTitle = item.getOriginalTitle();
-                        String description = item.getDescription();
-                        String itemUrl = item.getExternalItemUrl();
-                        String mainImage = item.getMainPictureUrl();
-
-                        // === IMAGES ===
-                        List<ProductDetailDTO.ImageDTO> images = List.of();
-                        if (item.getPictures() != null) {
-                            images = item.getPictures().stream()
-                                    .map(pic -> ProductDetailDTO.ImageDTO.builder()
-                                            .url(pic.getUrl())
-                                            .smallUrl(pic.getSmall() != null ? pic.getSmall().getUrl() : null)
-                                            .mediumUrl(pic.getMedium() != null ? pic.getMedium().getUrl() : null)
-                                            .largeUrl(pic.getLarge() != null ? pic.getLarge().getUrl() : null)
-                                            .isMain(pic.getIsMain())
-                                            .build())
-                                    .toList();
-                        }
-
-                        // === PRICING ===
-                        ProductDetailDTO.PriceDTO currentPrice = null;
-                        ProductDetailDTO.PriceDTO promotionPrice = null;
-                        Integer discountPercent = null;
-
-                        if (item.getPrice() != null) {
-                            currentPrice = ProductDetailDTO.PriceDTO.builder()
-                                    .originalPrice(item.getPrice().getOriginalPrice())
-                                    .currencyCode(item.getPrice().getOriginalCurrencyCode())
-                                    .currencySign(item.getPrice().getCurrencySign())
-                                    .formattedPrice(item.getPrice().getConvertedPrice())
-                                    .build();
-                        }
-
-                        if (item.getPromotionPrice() != null) {
-                            promotionPrice = ProductDetailDTO.PriceDTO.builder()
-                                    .originalPrice(item.getPromotionPrice().getOriginalPrice())
-                                    .currencyCode(item.getPromotionPrice().getOriginalCurrencyCode())
-                                    .currencySign(item.getPromotionPrice().getCurrencySign())
-                                    .formattedPrice(item.getPromotionPrice().getConvertedPrice())
-                                    .build();
-
-                            // Calculate discount percentage
-                            if (currentPrice != null && currentPrice.getOriginalPrice() != null
-                                    && promotionPrice.getOriginalPrice() != null) {
-                                double original = currentPrice.getOriginalPrice();
-                                double promo = promotionPrice.getOriginalPrice();
-                                if (original > 0) {
-                                    discountPercent = (int) Math.round(((original - promo) / original) * 100);
-                                }
-                            }
-                        }
-
-                        // === CATEGORY PATH ===
-                        List<String> categoryPath = List.of();
-                        if (rootPath != null && rootPath.getContent() != null) {
-                            categoryPath = rootPath.getContent().stream()
-                                    .map(AliexpressProductDetailResponse.Category::getName)
-                                    .filter(name -> name != null && !name.isEmpty())
-                                    .toList();
-                        }
-
-                        // === VENDOR INFO ===
-                        ProductDetailDTO.VendorDTO vendorDTO = null;
-                        if (vendor != null) {
-                            Integer positiveRating = null;
-                            if (vendor.getCredit() != null && vendor.getCredit().getTotalFeedbacks() != null
-                                    && vendor.getCredit().getTotalFeedbacks() > 0) {
-                                positiveRating = (int) Math.round(
-                                    (vendor.getCredit().getPositiveFeedbacks() * 100.0) / vendor.getCredit().getTotalFeedbacks()
-                                );
-                            }
-
-                            vendorDTO = ProductDetailDTO.VendorDTO.builder()
-                                    .vendorId(vendor.getId())
-                                    .vendorName(vendor.getName())
-                                    .displayName(vendor.getDisplayName())
-                                    .shopUrl(getShopUrl(vendor.getFeaturedValues()))
-                                    .logoUrl(vendor.getDisplayPictureUrl())
-                                    .positiveRating(positiveRating)
-                                    .totalFeedbacks(vendor.getCredit() != null ? vendor.getCredit().getTotalFeedbacks() : null)
-                                    .build();
-                        }
-
-                        // === VARIANTS (from ConfiguredItems) ===
-                        List<ProductDetailDTO.VariantDTO> variants = List.of();
-                        if (item.getConfiguredItems() != null && !item.getConfiguredItems().isEmpty()) {
-                            variants = item.getConfiguredItems().stream()
-                                    .limit(10) // Limit to top 10 variants
-                                    .map(config -> {
-                                        String variantName = buildVariantName(config.getConfigurators(), item.getAttributes());
-                                        return ProductDetailDTO.VariantDTO.builder()
-                                                .variantId(config.getId())
-                                                .name(variantName)
-                                                .options(List.of()) // Can be expanded if needed
-                                                .price(config.getPrice() != null ? config.getPrice().getOriginalPrice() : null)
-                                                .quantity(config.getQuantity())
-                                                .build();
-                                    })
-                                    .toList();
-                        }
-
-                        // === REVIEWS ===
-                        ProductDetailDTO.ReviewSummaryDTO reviewSummary = null;
-                        Double averageRating = null;
-                        Integer totalReviews = 0;
-                        Integer reviewCount = 0;
-
-                        // Extract rating and review count from FeaturedValues
-                        if (item.getFeaturedValues() != null) {
-                            for (var fv : item.getFeaturedValues()) {
-                                if ("rating".equals(fv.getName())) {
-                                    try {
-                                        averageRating = Double.parseDouble(fv.getValue());
-                                    } catch (NumberFormatException e) {
-                                        log.warn("Could not parse rating: {}", fv.getValue());
-                                    }
-                                } else if ("reviews".equals(fv.getName())) {
-                                    try {
-                                        reviewCount = Integer.parseInt(fv.getValue());
-                                    } catch (NumberFormatException e) {
-                                        log.warn("Could not parse review count: {}", fv.getValue());
-                                    }
-                                } else if ("TotalSales".equals(fv.getName())) {
-                                    // Handled below
-                                }
-                            }
-                        }
+        return productDetailCache.get(Marketplace.ALIEXPRESS, DTO_CACHE_PREFIX + productId, ProductDetailDTO.class,
+                        () -> requestCoalescer.execute(Marketplace.ALIEXPRESS, "/BatchGetItemFullInfo:dto",
+                                List.of(productId), () -> fetchProductDetailsProjected(productId)))
+                .doOnError(error ->
+                        log.error("Error getting simplified product details (OtAPI) for ID {}: {}",
+                                productId, error.getMessage()));
+    }
 
-                        List<ProductDetailDTO.ReviewDTO> topReviews = List.of();
-                        if (providerReviews != null && providerReviews.getContent() != null) {
-                            totalReviews = providerReviews.getContent().size();
-                            topReviews = providerReviews.getContent().stream()
-                                    .limit(5) // Top 5 reviews
-                                    .map(review -> ProductDetailDTO.ReviewDTO.builder()
-                                            .reviewId(review.getExternalId())
-                                            .userName(review.getUserNick())
-                                            .rating(review.getRating())
-                                            .content(review.getContent())
-                                            .date(review.getCreatedDate())
-                                            .country(review.getCountry())
-                                            .images(review.getImages())
-                                            .build())
-                                    .toList();
-                        }
+    /**
+     * Call upstream /BatchGetItemFullInfo and decode only the DETAIL_DTO_PROJECTION paths
+     */
+    private Mono<ProductDetailDTO> fetchProductDetailsProjected(String productId) {
+        return requestItemFullInfo(productId)
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> otApiResponseDecoder.decodeProjected(body, AliexpressProductDetailResponse.class,
+                        DETAIL_DTO_PROJECTION, "OtAPI product (projected) " + productId))
+                .flatMap(projected -> {
+                    if (!"Ok".equalsIgnoreCase(projected.value().getErrorCode())) {
+                        log.error("OtAPI returned error: {}", projected.value().getErrorCode());
+                        return Mono.error(new RuntimeException("OtAPI Error: " + projected.value().getErrorCode()));
+                    }
+                    return Mono.just(toProductDetailDTO(productId, projected.value(),
+                            projected.arraySizes().get(REVIEWS_PATH)));
+                })
+                .timeout(Duration.ofSeconds(30));
+    }
 
-                        if (totalReviews > 0 || reviewCount > 0) {
-                            reviewSummary = ProductDetailDTO.ReviewSummaryDTO.builder()
-                                    .totalReviews(Math.max(totalReviews, reviewCount))
-                                    .averageRating(averageRating)
-                                    .topReviews(topReviews)
-                                    .build();
+    /**
+     * Map OtAPI detail response to ProductDetailDTO
+     *
+     * @param providerReviewCount Real review count when the reviews array was truncated by projection,
+     *                            null to use the size of the (full) reviews list
+     */
+    private ProductDetailDTO toProductDetailDTO(String productId, AliexpressProductDetailResponse response,
+                                                Integer providerReviewCount) {
+        try {
+            if (response == null || response.getResult() == null) {
+                log.error("Response or result is null for product ID: {}", productId);
+                throw new RuntimeException("Invalid response from OtAPI");
+            }
+
+            var item = response.getResult().getItem();
+            if (item == null) {
+                log.error("Item is null for product ID: {}", productId);
+                throw new RuntimeException("Product item not found");
+            }
+
+            var vendor = response.getResult().getVendor();
+            var rootPath = response.getResult().getRootPath();
+            var vendorItems = response.getResult().getVendorItems();
+            var providerReviews = response.getResult().getProviderReviews();
+
+            // === BASIC INFO ===
+            String itemId = item.getId();
+            String title = item.getTitle();
+            String originalTitle = item.getOriginalTitle();
+            String description = item.getDescription();
+            String itemUrl = item.getExternalItemUrl();
+            String mainImage = item.getMainPictureUrl();
+
+            // === IMAGES ===
+            List<ProductDetailDTO.ImageDTO> images = List.of();
+            if (item.getPictures() != null) {
+                images = item.getPictures().stream()
+                        .map(pic -> ProductDetailDTO.ImageDTO.builder()
+                                .url(pic.getUrl())
+                                .smallUrl(pic.getSmall() != null ? pic.getSmall().getUrl() : null)
+                                .mediumUrl(pic.getMedium() != null ? pic.getMedium().getUrl() : null)
+                                .largeUrl(pic.getLarge() != null ? pic.getLarge().getUrl() : null)
+                                .isMain(pic.getIsMain())
+                                .build())
+                        .toList();
+            }
+
+            // === PRICING ===
+            ProductDetailDTO.PriceDTO currentPrice = null;
+            ProductDetailDTO.PriceDTO promotionPrice = null;
+            Integer discountPercent = null;
+
+            if (item.getPrice() != null) {
+                currentPrice = ProductDetailDTO.PriceDTO.builder()
+                        .originalPrice(item.getPrice().getOriginalPrice())
+                        .currencyCode(item.getPrice().getOriginalCurrencyCode())
+                        .currencySign(item.getPrice().getCurrencySign())
+                        .formattedPrice(item.getPrice().getConvertedPrice())
+                        .build();
+            }
+
+            if (item.getPromotionPrice() != null) {
+                promotionPrice = ProductDetailDTO.PriceDTO.builder()
+                        .originalPrice(item.getPromotionPrice().getOriginalPrice())
+                        .currencyCode(item.getPromotionPrice().getOriginalCurrencyCode())
+                        .currencySign(item.getPromotionPrice().getCurrencySign())
+                        .formattedPrice(item.getPromotionPrice().getConvertedPrice())
+                        .build();
+
+                // Calculate discount percentage
+                if (currentPrice != null && currentPrice.getOriginalPrice() != null
+                        && promotionPrice.getOriginalPrice() != null) {
+                    double original = currentPrice.getOriginalPrice();
+                    double promo = promotionPrice.getOriginalPrice();
+                    if (original > 0) {
+                        discountPercent = (int) Math.round(((original - promo) / original) * 100);
+                    }
+                }
+            }
+
+            // === CATEGORY PATH ===
+            List<String> categoryPath = List.of();
+            if (rootPath != null && rootPath.getContent() != null) {
+                categoryPath = rootPath.getContent().stream()
+                        .map(AliexpressProductDetailResponse.Category::getName)
+                        .filter(name -> name != null && !name.isEmpty())
+                        .toList();
+            }
+
+            // === VENDOR INFO ===
+            ProductDetailDTO.VendorDTO vendorDTO = null;
+            if (vendor != null) {
+                Integer positiveRating = null;
+                if (vendor.getCredit() != null && vendor.getCredit().getTotalFeedbacks() != null
+                        && vendor.getCredit().getTotalFeedbacks() > 0) {
+                    positiveRating = (int) Math.round(
+                        (vendor.getCredit().getPositiveFeedbacks() * 100.0) / vendor.getCredit().getTotalFeedbacks()
+                    );
+                }
+
+                vendorDTO = ProductDetailDTO.VendorDTO.builder()
+                        .vendorId(vendor.getId())
+                        .vendorName(vendor.getName())
+                        .displayName(vendor.getDisplayName())
+                        .shopUrl(getShopUrl(vendor.getFeaturedValues()))
+                        .logoUrl(vendor.getDisplayPictureUrl())
+                        .positiveRating(positiveRating)
+                        .totalFeedbacks(vendor.getCredit() != null ? vendor.getCredit().getTotalFeedbacks() : null)
+                        .build();
+            }
+
+            // === VARIANTS (from ConfiguredItems) ===
+            List<ProductDetailDTO.VariantDTO> variants = List.of();
+            if (item.getConfiguredItems() != null && !item.getConfiguredItems().isEmpty()) {
+                // Index attributes once per item instead of scanning them for every configurator
+                Map<String, String> attributeLabels = indexAttributeLabels(item.getAttributes());
+                int variantCount = Math.min(10, item.getConfiguredItems().size()); // Limit to top 10 variants
+                List<ProductDetailDTO.VariantDTO> variantList = new ArrayList<>(variantCount);
+                for (int i = 0; i < variantCount; i++) {
+                    var config = item.getConfiguredItems().get(i);
+                    variantList.add(ProductDetailDTO.VariantDTO.builder()
+                            .variantId(config.getId())
+                            .name(buildVariantName(config.getConfigurators(), attributeLabels))
+                            .options(List.of()) // Can be expanded if needed
+                            .price(config.getPrice() != null ? config.getPrice().getOriginalPrice() : null)
+                            .quantity(config.getQuantity())
+                            .build());
+                }
+                variants = variantList;
+            }
+
+            // === REVIEWS ===
+            ProductDetailDTO.ReviewSummaryDTO reviewSummary = null;
+            Double averageRating = null;
+            Integer totalReviews = 0;
+            Integer reviewCount = 0;
+
+            // Extract rating and review count from FeaturedValues
+            if (item.getFeaturedValues() != null) {
+                for (var fv : item.getFeaturedValues()) {
+                    if ("rating".equals(fv.getName())) {
+                        try {
+                            averageRating = Double.parseDouble(fv.getValue());
+                        } catch (NumberFormatException e) {
+                            log.warn("Could not parse rating: {}", fv.getValue());
                         }
-
-                        // === FEATURED VALUES ===
-                        Integer totalSales = null;
-                        Integer favoriteCount = null;
-
-                        if (item.getFeaturedValues() != null) {
-                            for (var fv : item.getFeaturedValues()) {
-                                if ("TotalSales".equals(fv.getName())) {
-                                    try {
-                                        totalSales = Integer.parseInt(fv.getValue());
-                                    } catch (NumberFormatException e) {
-                                        log.warn("Could not parse total sales: {}", fv.getValue());
-                                    }
-                                } else if ("favCount".equals(fv.getName())) {
-                                    try {
-                                        favoriteCount = Integer.parseInt(fv.getValue());
-                                    } catch (NumberFormatException e) {
-                                        log.warn("Could not parse favorite count: {}", fv.getValue());
-                                    }
-                                }
-                            }
+                    } else if ("reviews".equals(fv.getName())) {
+                        try {
+                            reviewCount = Integer.parseInt(fv.getValue());
+                        } catch (NumberFormatException e) {
+                            log.warn("Could not parse review count: {}", fv.getValue());
                         }
-
-                        // === PHYSICAL PARAMETERS ===
-                        ProductDetailDTO.PhysicalParametersDTO physicalParams = null;
-                        if (item.getPhysicalParameters() != null) {
-                            physicalParams = ProductDetailDTO.PhysicalParametersDTO.builder()
-                                    .weight(item.getPhysicalParameters().getWeight())
-                                    .length(item.getPhysicalParameters().getLength())
-                                    .width(item.getPhysicalParameters().getWidth())
-                                    .height(item.getPhysicalParameters().getHeight())
-                                    .build();
+                    } else if ("TotalSales".equals(fv.getName())) {
+                        // Handled below
+                    }
+                }
+            }
+
+            List<ProductDetailDTO.ReviewDTO> topReviews = List.of();
+            if (providerReviews != null && providerReviews.getContent() != null) {
+                totalReviews = providerReviewCount != null ? providerReviewCount : providerReviews.getContent().size();
+                topReviews = providerReviews.getContent().stream()
+                        .limit(5) // Top 5 reviews
+                        .map(review -> ProductDetailDTO.ReviewDTO.builder()
+                                .reviewId(review.getExternalId())
+                                .userName(review.getUserNick())
+                                .rating(review.getRating())
+                                .content(review.getContent())
+                                .date(review.getCreatedDate())
+                                .country(review.getCountry())
+                                .images(review.getImages())
+                                .build())
+                        .toList();
+            }
+
+            if (totalReviews > 0 || reviewCount > 0) {
+                reviewSummary = ProductDetailDTO.ReviewSummaryDTO.builder()
+                        .totalReviews(Math.max(totalReviews, reviewCount))
+                        .averageRating(averageRating)
+                        .topReviews(topReviews)
+                        .build();
+            }
+
+            // === FEATURED VALUES ===
+            Integer totalSales = null;
+            Integer favoriteCount = null;
+
+            if (item.getFeaturedValues() != null) {
+                for (var fv : item.getFeaturedValues()) {
+                    if ("TotalSales".equals(fv.getName())) {
+                        try {
+                            totalSales = Integer.parseInt(fv.getValue());
+                        } catch (NumberFormatException e) {
+                            log.warn("Could not parse total sales: {}", fv.getValue());
                         }
-
-                        // === RELATED PRODUCTS ===
-                        List<ProductDetailDTO.RelatedProductDTO> relatedProducts = List.of();
-                        if (vendorItems != null && vendorItems.getContent() != null) {
-                            relatedProducts = vendorItems.getContent().stream()
-                                    .limit(10) // Top 10 related products
-                                    .map(relatedItem -> ProductDetailDTO.RelatedProductDTO.builder()
-                                            .itemId(relatedItem.getId())
-                                            .title(relatedItem.getTitle())
-                                            .imageUrl(relatedItem.getMainPictureUrl())
-                                            .productUrl(relatedItem.getExternalItemUrl())
-                                            .price(relatedItem.getPrice() != null ?
-                                                    relatedItem.getPrice().getOriginalPrice() : null)
-                                            .currencySign(relatedItem.getPrice() != null ?
-                                                    relatedItem.getPrice().getCurrencySign() : "$")
-                                            .build())
-                                    .toList();
+                    } else if ("favCount".equals(fv.getName())) {
+                        try {
+                            favoriteCount = Integer.parseInt(fv.getValue());
+                        } catch (NumberFormatException e) {
+                            log.warn("Could not parse favorite count: {}", fv.getValue());
                         }
-
-                        // === BUILD FINAL DTO ===
-                        return ProductDetailDTO.builder()
-                                .itemId(itemId)
-                                .title(title)
-                                .originalTitle(originalTitle)
-                                .description(description)
-                                .itemUrl(itemUrl)
-                                .mainImage(mainImage)
-                                .images(images)
-                                .available(true) // OtAPI doesn't have this field explicitly
-                                .currentPrice(currentPrice)
-                                .promotionPrice(promotionPrice)
-                                .discountPercent(discountPercent)
-                                .totalQuantity(item.getMasterQuantity())
-                                .categoryId(item.getCategoryId())
-                                .brandName(item.getBrandName())
-                                .categoryPath(categoryPath)
-                                .vendor(vendorDTO)
-                                .variants(variants)
-                                .reviews(reviewSummary)
-                                .totalSales(totalSales)
-                                .rating(averageRating)
-                                .reviewCount(reviewCount)
-                                .favoriteCount(favoriteCount)
-                                .physicalParameters(physicalParams)
-                                .relatedProducts(relatedProducts)
-                                .build();
-
-                    } catch (Exception e) {
-                        log.error("Error mapping OtAPI product details to DTO: {}", e.getMessage(), e);
-                        throw new RuntimeException("Error processing product details", e);
                     }
-                })
-                .doOnError(error ->
-                        log.error("Error getting simplified product details (OtAPI) for ID {}: {}",
-                                productId, error.getMessage()));
+                }
+            }
+
+            // === PHYSICAL PARAMETERS ===
+            ProductDetailDTO.PhysicalParametersDTO physicalParams = null;
+            if (item.getPhysicalParameters() != null) {
+                physicalParams = ProductDetailDTO.PhysicalParametersDTO.builder()
+                        .weight(item.getPhysicalParameters().getWeight())
+                        .length(item.getPhysicalParameters().getLength())
+                        .width(item.getPhysicalParameters().getWidth())
+                        .height(item.getPhysicalParameters().getHeight())
+                        .build();
+            }
+
+            // === RELATED PRODUCTS ===
+            List<ProductDetailDTO.RelatedProductDTO> relatedProducts = List.of();
+            if (vendorItems != null && vendorItems.getContent() != null) {
+                relatedProducts = vendorItems.getContent().stream()
+                        .limit(10) // Top 10 related products
+                        .map(relatedItem -> ProductDetailDTO.RelatedProductDTO.builder()
+                                .itemId(relatedItem.getId())
+                                .title(relatedItem.getTitle())
+                                .imageUrl(relatedItem.getMainPictureUrl())
+                                .productUrl(relatedItem.getExternalItemUrl())
+                                .price(relatedItem.getPrice() != null ?
+                                        relatedItem.getPrice().getOriginalPrice() : null)
+                                .currencySign(relatedItem.getPrice() != null ?
+                                        relatedItem.getPrice().getCurrencySign() : "$")
+                                .build())
+                        .toList();
+            }
+
+            // === BUILD FINAL DTO ===
+            return ProductDetailDTO.builder()
+                    .itemId(itemId)
+                    .title(title)
+                    .originalTitle(originalTitle)
+                    .description(description)
+                    .itemUrl(itemUrl)
+                    .mainImage(mainImage)
+                    .images(images)
+                    .available(true) // OtAPI doesn't have this field explicitly
+                    .currentPrice(currentPrice)
+                    .promotionPrice(promotionPrice)
+                    .discountPercent(discountPercent)
+                    .totalQuantity(item.getMasterQuantity())
+                    .categoryId(item.getCategoryId())
+                    .brandName(item.getBrandName())
+                    .categoryPath(categoryPath)
+                    .vendor(vendorDTO)
+                    .variants(variants)
+                    .reviews(reviewSummary)
+                    .totalSales(totalSales)
+                    .rating(averageRating)
+                    .reviewCount(reviewCount)
+                    .favoriteCount(favoriteCount)
+                    .physicalParameters(physicalParams)
+                    .relatedProducts(relatedProducts)
+                    .build();
+
+        } catch (Exception e) {
+            log.error("Error mapping OtAPI product details to DTO: {}", e.getMessage(), e);
+            throw new RuntimeException("Error processing product details", e);
+        }
     }
-
     /**
      * Helper method to extract shop URL from vendor's featured values
      */
@@ -439,35 +552,71 @@ public class AliExpressService implements ProductMarketplaceService {
         return null;
     }
 
+    /**
+     * Helper method to index attributes by (pid, vid) -> "PropertyName: Value"
+     * Built once per item; first attribute wins on duplicate keys (same as the previous findFirst scan)
+     */
+    private Map<String, String> indexAttributeLabels(List<AliexpressProductDetailResponse.Attribute> attributes) {
+        if (attributes == null || attributes.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, String> labels = new HashMap<>(attributes.size() * 2);
+        for (var attr : attributes) {
+            if (attr.getPid() != null && attr.getVid() != null) {
+                labels.putIfAbsent(attributeKey(attr.getPid(), attr.getVid()),
+                        attr.getPropertyName() + ": " + attr.getValue());
+            }
+        }
+        return labels;
+    }
+
+    private static String attributeKey(String pid, String vid) {
+        return pid + '\u0000' + vid;
+    }
+
     /**
      * Helper method to build variant name from configurators
+     * Unknown (pid, vid) pairs are skipped; "Default" when nothing matches
      */
     private String buildVariantName(List<AliexpressProductDetailResponse.Configurator> configurators,
-                                      List<AliexpressProductDetailResponse.Attribute> attributes) {
-        if (configurators == null || configurators.isEmpty() || attributes == null) {
+                                    Map<String, String> attributeLabels) {
+        if (configurators == null || configurators.isEmpty() || attributeLabels.isEmpty()) {
             return "Default";
         }
 
-        return configurators.stream()
-                .map(config -> {
-                    return attributes.stream()
-                            .filter(attr -> config.getPid().equals(attr.getPid())
-                                    && config.getVid().equals(attr.getVid()))
-                            .map(attr -> attr.getPropertyName() + ": " + attr.getValue())
-                            .findFirst()
-                            .orElse("Unknown");
-                })
-                .filter(name -> !"Unknown".equals(name))
-                .reduce((a, b) -> a + ", " + b)
-                .orElse("Default");
+        StringBuilder name = null;
+        for (var config : configurators) {
+            String label = attributeLabels.get(attributeKey(config.getPid(), config.getVid()));
+            if (label == null) {
+                continue;
+            }
+            if (name == null) {
+                name = new StringBuilder(label);
+            } else {
+                name.append(", ").append(label);
+            }
+        }
+        return name != null ? name.toString() : "Default";
     }
 
     /**
      * Search products using BatchSearchItemsFrame endpoint (full response)
      * Endpoint: /BatchSearchItemsFrame
+     * Concurrent identical searches share one upstream call (RequestCoalescer)
      */
     public Mono<AliexpressProductSearchResponse> searchProductsNewAPI(String keyword, String language,
                                                                       int framePosition, int frameSize) {
+        return requestCoalescer.execute(Marketplace.ALIEXPRESS, "/BatchSearchItemsFrame",
+                List.of(keyword, language, framePosition, frameSize),
+                () -> fetchSearchItemsFrame(keyword, language, framePosition, frameSize));
+    }
+
+    /**
+     * Call upstream /BatchSearchItemsFrame directly (bypasses request coalescing)
+     */
+    private Mono<AliexpressProductSearchResponse> fetchSearchItemsFrame(String keyword, String language,
+                                                                        int framePosition, int frameSize) {
         log.info("Searching products with BatchSearchItemsFrame - keyword: {}, language: {}, framePosition: {}, frameSize: {}",
                  keyword, language, framePosition, frameSize);
 
@@ -490,24 +639,11 @@ public class AliExpressService implements ProductMarketplaceService {
                                 return Mono.error(new RuntimeException("BatchSearchItemsFrame API Error: " + errorBody));
                             });
                 })
-                .bodyToMono(String.class)
-                .doOnNext(jsonString -> {
-                    log.debug("Raw JSON response (BatchSearchItemsFrame): {}",
-                            jsonString.substring(0, Math.min(1000, jsonString.length())) + "...");
-                })
-                .flatMap(jsonString -> {
-                    try {
-                        AliexpressProductSearchResponse response = objectMapper.readValue(
-                                jsonString, AliexpressProductSearchResponse.class);
-                        log.info("Successfully parsed BatchSearchItemsFrame results - ErrorCode: {}",
-                                response.getErrorCode());
-                        return Mono.just(response);
-                    } catch (Exception e) {
-                        log.error("Error parsing BatchSearchItemsFrame JSON: {}", e.getMessage());
-                        log.error("Problematic JSON: {}", jsonString);
-                        return Mono.error(new RuntimeException("JSON parsing error: " + e.getMessage(), e));
-                    }
-                })
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> otApiResponseDecoder.decode(body, AliexpressProductSearchResponse.class,
+                        "BatchSearchItemsFrame"))
+                .doOnNext(response -> log.info("Successfully parsed BatchSearchItemsFrame results - ErrorCode: {}",
+                        response.getErrorCode()))
                 .timeout(Duration.ofSeconds(30))
                 .doOnError(WebClientResponseException.class, error ->
                         log.error("WebClient error (BatchSearchItemsFrame): Status={}, Body={}",
@@ -18,4 +18,11 @@ public class ExchangeRateScheduler {
         log.info("⏰ Scheduled task: Updating exchange rates...");
         exchangeRateService.updateRatesFromApi();
     }
+
+    // Safety net for missed Redis invalidation messages (other node updated rates while Redis was down)
+    @Scheduled(fixedDelayString = "${exchange-rate.snapshot.reload-interval:PT5M}",
+            initialDelayString = "${exchange-rate.snapshot.reload-interval:PT5M}")
+    public void reloadSnapshot() {
+        exchangeRateService.reloadSnapshot();
+    }
 }
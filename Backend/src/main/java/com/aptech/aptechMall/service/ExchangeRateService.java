@@ -1,26 +1,35 @@
 package com.aptech.aptechMall.service;
 
+import com.aptech.aptechMall.config.HttpClientFactory;
 import com.aptech.aptechMall.dto.exchange.RapidApiExchangeRateResponse;
 import com.aptech.aptechMall.dto.exchange.ExchangeRateResponse;
 import com.aptech.aptechMall.entity.ExchangeRate;
+import com.aptech.aptechMall.entity.ExchangeRateSequence;
 import com.aptech.aptechMall.repository.ExchangeRateRepository;
+import com.aptech.aptechMall.repository.ExchangeRateSequenceRepository;
 import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Service quản lý tỷ giá ngoại tệ (Exchange Rate Management)
@@ -52,8 +61,11 @@ import java.util.stream.Collectors;
  *
  * CACHING STRATEGY:
  * - Tỷ giá được lưu trong database (ExchangeRate entity)
- * - Không tự động update định kỳ (phải manual trigger)
- * - Tỷ giá ổn định → không cần update thường xuyên
+ * - Toàn bộ bảng được load vào ExchangeRateSnapshot (immutable, AtomicReference)
+ *   → getRate/convertCurrency chỉ đọc memory, không query DB trên hot path (checkout, fee calculation)
+ * - Snapshot được reload sau khi updateRatesFromApi/manualUpdateRate commit
+ * - Node khác được báo qua Redis channel "exchange-rates:changed" → reload từ DB
+ * - ExchangeRateScheduler reload định kỳ (safety net nếu miss message khi Redis down)
  * - Admin có thể manual update khi cần
  *
  * CURRENCY CONVERSION:
@@ -61,6 +73,12 @@ import java.util.stream.Collectors;
  * - Luôn convert qua VND làm intermediate
  * - Ví dụ: USD → CNY = USD → VND → CNY
  *
+ * RATE VERSION:
+ * - Mỗi lần ghi tỷ giá → rate_version lấy từ counter ExchangeRateSequence (SELECT ... FOR UPDATE)
+ *   → không trùng khi ghi đồng thời, tăng theo thứ tự commit; rate_version có unique constraint
+ * - Snapshot version = max(rate_version) → giống nhau trên mọi node
+ * - Order lưu exchangeRateVersion của snapshot dùng khi checkout / updateOrderFees
+ *
  * ROUNDING:
  * - VND: Làm tròn về số nguyên (HALF_UP)
  * - USD/CNY: 2 chữ số thập phân
@@ -94,12 +112,19 @@ import java.util.stream.Collectors;
  * - Fallback rate đảm bảo system luôn hoạt động được
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ExchangeRateService {
 
+    static final String CHANGED_CHANNEL = "exchange-rates:changed";
+
     private final ExchangeRateRepository exchangeRateRepository;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final ExchangeRateSequenceRepository sequenceRepository;
+    private final RestTemplate restTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final AtomicReference<ExchangeRateSnapshot> snapshot = new AtomicReference<>(ExchangeRateSnapshot.empty());
+    private final String nodeId = UUID.randomUUID().toString();
 
     @Value("${rapidapi.exchange.key}")
     private String apiKey;
@@ -110,74 +135,65 @@ public class ExchangeRateService {
     @Value("${rapidapi.exchange.base-url}")
     private String baseUrl;
 
+    public ExchangeRateService(ExchangeRateRepository exchangeRateRepository,
+                               ExchangeRateSequenceRepository sequenceRepository,
+                               HttpClientFactory httpClientFactory,
+                               StringRedisTemplate redisTemplate,
+                               RedisMessageListenerContainer listenerContainer) {
+        this.exchangeRateRepository = exchangeRateRepository;
+        this.sequenceRepository = sequenceRepository;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        // Pooled client with connect/response timeouts instead of bare HttpURLConnection
+        this.restTemplate = new RestTemplate(
+                new ReactorClientHttpRequestFactory(httpClientFactory.create("exchange")));
+    }
+
     public Map<String, ExchangeRateResponse> getAllRates() {
-        List<ExchangeRate> rates = exchangeRateRepository.findAll();
-
-        return rates.stream()
-                .collect(Collectors.toMap(
-                        ExchangeRate::getCurrency,
-                        rate -> ExchangeRateResponse.builder()
-                                .currency(rate.getCurrency())
-                                .rateToVnd(rate.getRateToVnd())
-                                .source(rate.getSource())
-                                .updatedAt(rate.getUpdatedAt())
-                                .build()
-                ));
+        return snapshot.get().asMap();
     }
 
     /**
      * Lấy tỷ giá của một loại tiền tệ
      *
-     * Tìm trong database trước, nếu không có → dùng fallback rate
+     * Đọc từ snapshot trong memory, nếu không có → dùng fallback rate
      *
      * @param currency Mã tiền tệ (USD, CNY)
      * @return ExchangeRateResponse với rate, source, updatedAt
      */
     public ExchangeRateResponse getRate(String currency) {
-        return exchangeRateRepository
-            .findByCurrency(currency.toUpperCase())
-            .map(rate -> ExchangeRateResponse.builder()
-                    .currency(rate.getCurrency())
-                    .rateToVnd(rate.getRateToVnd())
-                    .source(rate.getSource())
-                    .updatedAt(rate.getUpdatedAt())
-                    .build())
-            .orElseGet(() -> getFallbackRate(currency));
+        return snapshot.get().getRate(currency);
     }
 
     /**
-     * Get fallback exchange rate if database rate not available
-     * @param currency Currency code
-     * @return Fallback exchange rate
+     * Snapshot tỷ giá hiện tại
+     *
+     * Dùng khi cần convert nhiều lần trong một nghiệp vụ (checkout, updateOrderFees):
+     * lấy snapshot một lần → mọi conversion dùng cùng một bộ tỷ giá,
+     * và ghi snapshot.getVersion() vào Order
      */
-    private ExchangeRateResponse getFallbackRate(String currency) {
-        log.warn("⚠️ Using fallback exchange rate for {}", currency);
-
-        // Default fallback rates (conservative estimates)
-        BigDecimal defaultRate;
-        switch (currency.toUpperCase()) {
-            case "USD":
-                defaultRate = BigDecimal.valueOf(25000);
-                break;
-            case "CNY":
-                defaultRate = BigDecimal.valueOf(3500);
-                break;
-            default:
-                log.error("❌ No fallback rate available for currency: {}", currency);
-                throw new RuntimeException(
-                    "Exchange rate not available for: " + currency);
-        }
+    public ExchangeRateSnapshot currentSnapshot() {
+        return snapshot.get();
+    }
 
-        return ExchangeRateResponse.builder()
-                .currency(currency.toUpperCase())
-                .rateToVnd(defaultRate)
-                .source("FALLBACK")
-                .updatedAt(java.time.LocalDateTime.now())
-                .build();
+    /**
+     * Reload snapshot từ database và swap atomically
+     *
+     * Gọi sau khi tỷ giá thay đổi (node này hoặc node khác qua Redis),
+     * và định kỳ bởi ExchangeRateScheduler
+     */
+    public void reloadSnapshot() {
+        ExchangeRateSnapshot loaded = ExchangeRateSnapshot.of(exchangeRateRepository.findAll());
+        snapshot.set(loaded);
+        log.debug("Exchange rate snapshot reloaded ({} currencies, version {})",
+                loaded.asMap().size(), loaded.getVersion());
     }
 
     @PostConstruct
     public void initializeRates() {
+        // Counter row của rate_version: INSERT IGNORE → an toàn khi nhiều node khởi động cùng lúc
+        sequenceRepository.insertIfAbsent(ExchangeRateSequence.ID);
+
         long count = exchangeRateRepository.count();
         if (count == 0) {
             log.info("🔄 No exchange rates found. Fetching initial rates...");
@@ -185,6 +201,44 @@ public class ExchangeRateService {
         } else {
             log.info("✅ Exchange rates already exist ({} currencies)", count);
         }
+        reloadSnapshot();
+
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String sender = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (!nodeId.equals(sender)) {
+                log.info("🔄 Exchange rates changed on another node, reloading snapshot");
+                reloadSnapshot();
+            }
+        }, new ChannelTopic(CHANGED_CHANNEL));
+    }
+
+    /**
+     * Reload snapshot + báo node khác sau khi transaction commit
+     *
+     * Chờ commit để node khác không đọc lại dữ liệu cũ từ DB.
+     * Không có transaction (gọi trực tiếp) → chạy ngay.
+     */
+    private void publishChangeAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishChange();
+                }
+            });
+        } else {
+            publishChange();
+        }
+    }
+
+    private void publishChange() {
+        reloadSnapshot();
+        try {
+            redisTemplate.convertAndSend(CHANGED_CHANNEL, nodeId);
+        } catch (Exception e) {
+            // Other nodes catch up on their next scheduled reload
+            log.warn("⚠️ Failed to publish exchange rate change: {}", e.getMessage());
+        }
     }
 
     @Transactional
@@ -244,6 +298,7 @@ public class ExchangeRateService {
                 log.info("✅ Updated CNY rate: {} VND", cnyToVnd);
             }
 
+            publishChangeAfterCommit();
             log.info("✅ Exchange rates updated successfully from RapidAPI");
 
         } catch (Exception e) {
@@ -253,9 +308,9 @@ public class ExchangeRateService {
     }
 
     @Transactional
-    public void updateOrCreateRate(String currency,
-                                   BigDecimal rateToVnd,
-                                   String source) {
+    public ExchangeRate updateOrCreateRate(String currency,
+                                           BigDecimal rateToVnd,
+                                           String source) {
         ExchangeRate rate = exchangeRateRepository
             .findByCurrency(currency)
             .orElse(ExchangeRate.builder()
@@ -264,15 +319,37 @@ public class ExchangeRateService {
 
         rate.setRateToVnd(rateToVnd);
         rate.setSource(source);
-        exchangeRateRepository.save(rate);
+        rate.setRateVersion(nextRateVersion());
+        return exchangeRateRepository.saveAndFlush(rate); // flush so @PreUpdate sets updatedAt
+    }
+
+    /**
+     * Cấp rate_version tiếp theo
+     *
+     * Khóa dòng counter tới khi transaction commit → các lần ghi tỷ giá nối tiếp nhau.
+     * Dòng counter được tạo lúc khởi động ({@link #initializeRates()}), trước mọi lần ghi.
+     */
+    private long nextRateVersion() {
+        ExchangeRateSequence sequence = sequenceRepository.findForUpdate(ExchangeRateSequence.ID)
+                .orElseThrow(() -> new IllegalStateException("Exchange rate sequence is not initialized"));
+        sequence.setLastVersion(sequence.getLastVersion() + 1);
+        return sequenceRepository.saveAndFlush(sequence).getLastVersion();
     }
 
     @Transactional
     public ExchangeRateResponse manualUpdateRate(String currency,
                                                  BigDecimal rateToVnd) {
         log.info("📝 Manual update: {} = {} VND", currency, rateToVnd);
-        updateOrCreateRate(currency.toUpperCase(), rateToVnd, "MANUAL");
-        return getRate(currency);
+        ExchangeRate rate = updateOrCreateRate(currency.toUpperCase(), rateToVnd, "MANUAL");
+        publishChangeAfterCommit();
+
+        // Snapshot is swapped after commit, so build the response from the saved row
+        return ExchangeRateResponse.builder()
+                .currency(rate.getCurrency())
+                .rateToVnd(rate.getRateToVnd())
+                .source(rate.getSource())
+                .updatedAt(rate.getUpdatedAt())
+                .build();
     }
 
     /**
@@ -310,33 +387,6 @@ public class ExchangeRateService {
      * @return Số tiền sau khi convert
      */
     public BigDecimal convertCurrency(BigDecimal amount, String fromCurrency, String toCurrency) {
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
-            return BigDecimal.ZERO;
-        }
-
-        // If same currency, no conversion needed
-        if (fromCurrency.equalsIgnoreCase(toCurrency)) {
-            return amount;
-        }
-
-        // Get exchange rate for source currency to VND
-        ExchangeRateResponse fromRate = getRate(fromCurrency);
-
-        // If target is VND, just multiply by rate
-        if ("VND".equalsIgnoreCase(toCurrency)) {
-            return amount.multiply(fromRate.getRateToVnd())
-                    .setScale(0, RoundingMode.HALF_UP);
-        }
-
-        // If source is VND, divide by target rate
-        if ("VND".equalsIgnoreCase(fromCurrency)) {
-            ExchangeRateResponse toRate = getRate(toCurrency);
-            return amount.divide(toRate.getRateToVnd(), 2, RoundingMode.HALF_UP);
-        }
-
-        // Convert through VND (fromCurrency -> VND -> toCurrency)
-        BigDecimal amountInVND = amount.multiply(fromRate.getRateToVnd());
-        ExchangeRateResponse toRate = getRate(toCurrency);
-        return amountInVND.divide(toRate.getRateToVnd(), 2, RoundingMode.HALF_UP);
+        return snapshot.get().convert(amount, fromCurrency, toCurrency);
     }
 }
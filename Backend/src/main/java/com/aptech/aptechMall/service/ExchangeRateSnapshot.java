@@ -0,0 +1,163 @@
+package com.aptech.aptechMall.service;
+
+import com.aptech.aptechMall.dto.exchange.ExchangeRateResponse;
+import com.aptech.aptechMall.entity.ExchangeRate;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory copy of the exchange_rates table
+ *
+ * Loaded by ExchangeRateService at startup and swapped atomically after every rate update,
+ * so rate lookups on the hot path (checkout, fee calculation) need no database I/O.
+ *
+ * Callers that convert several amounts (checkout, fee update) should take one snapshot via
+ * ExchangeRateService.currentSnapshot() and use it for every conversion, so a concurrent
+ * rate update cannot mix two rate sets within one order. {@link #getVersion()} identifies
+ * the rate set and is recorded on the Order.
+ */
+@Slf4j
+public final class ExchangeRateSnapshot {
+
+    private final Map<String, ExchangeRateResponse> rates;
+    private final long version;
+    private final LocalDateTime loadedAt;
+
+    private ExchangeRateSnapshot(Map<String, ExchangeRateResponse> rates, long version, LocalDateTime loadedAt) {
+        this.rates = rates;
+        this.version = version;
+        this.loadedAt = loadedAt;
+    }
+
+    public static ExchangeRateSnapshot empty() {
+        return new ExchangeRateSnapshot(Map.of(), 0, LocalDateTime.now());
+    }
+
+    public static ExchangeRateSnapshot of(List<ExchangeRate> entities) {
+        Map<String, ExchangeRateResponse> rates = new HashMap<>();
+        long version = 0;
+        for (ExchangeRate rate : entities) {
+            rates.put(rate.getCurrency().toUpperCase(), ExchangeRateResponse.builder()
+                    .currency(rate.getCurrency())
+                    .rateToVnd(rate.getRateToVnd())
+                    .source(rate.getSource())
+                    .updatedAt(rate.getUpdatedAt())
+                    .build());
+            if (rate.getRateVersion() != null) {
+                version = Math.max(version, rate.getRateVersion());
+            }
+        }
+        return new ExchangeRateSnapshot(Map.copyOf(rates), version, LocalDateTime.now());
+    }
+
+    /**
+     * @param currency Currency code (case-insensitive)
+     * @return Rate from database, or null if the currency has no row
+     */
+    public ExchangeRateResponse find(String currency) {
+        return rates.get(currency.toUpperCase());
+    }
+
+    /**
+     * Lấy tỷ giá, nếu snapshot không có → dùng fallback rate
+     *
+     * @param currency Mã tiền tệ (USD, CNY)
+     * @return ExchangeRateResponse với rate, source, updatedAt
+     * @throws RuntimeException nếu không có fallback cho currency
+     */
+    public ExchangeRateResponse getRate(String currency) {
+        ExchangeRateResponse rate = find(currency);
+        return rate != null ? rate : getFallbackRate(currency);
+    }
+
+    /**
+     * Get fallback exchange rate if database rate not available
+     * @param currency Currency code
+     * @return Fallback exchange rate
+     */
+    private static ExchangeRateResponse getFallbackRate(String currency) {
+        log.warn("⚠️ Using fallback exchange rate for {}", currency);
+
+        // Default fallback rates (conservative estimates)
+        BigDecimal defaultRate;
+        switch (currency.toUpperCase()) {
+            case "USD":
+                defaultRate = BigDecimal.valueOf(25000);
+                break;
+            case "CNY":
+                defaultRate = BigDecimal.valueOf(3500);
+                break;
+            default:
+                log.error("❌ No fallback rate available for currency: {}", currency);
+                throw new RuntimeException(
+                    "Exchange rate not available for: " + currency);
+        }
+
+        return ExchangeRateResponse.builder()
+                .currency(currency.toUpperCase())
+                .rateToVnd(defaultRate)
+                .source("FALLBACK")
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Convert số tiền bằng tỷ giá của snapshot này
+     *
+     * Logic và rounding giống ExchangeRateService.convertCurrency
+     *
+     * @param amount Số tiền cần convert
+     * @param fromCurrency Loại tiền nguồn (USD, CNY, VND)
+     * @param toCurrency Loại tiền đích (USD, CNY, VND)
+     * @return Số tiền sau khi convert
+     */
+    public BigDecimal convert(BigDecimal amount, String fromCurrency, String toCurrency) {
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            return BigDecimal.ZERO;
+        }
+
+        // If same currency, no conversion needed
+        if (fromCurrency.equalsIgnoreCase(toCurrency)) {
+            return amount;
+        }
+
+        // If source is VND, divide by target rate
+        if ("VND".equalsIgnoreCase(fromCurrency)) {
+            return amount.divide(getRate(toCurrency).getRateToVnd(), 2, RoundingMode.HALF_UP);
+        }
+
+        ExchangeRateResponse fromRate = getRate(fromCurrency);
+
+        // If target is VND, just multiply by rate
+        if ("VND".equalsIgnoreCase(toCurrency)) {
+            return amount.multiply(fromRate.getRateToVnd())
+                    .setScale(0, RoundingMode.HALF_UP);
+        }
+
+        // Convert through VND (fromCurrency -> VND -> toCurrency)
+        BigDecimal amountInVND = amount.multiply(fromRate.getRateToVnd());
+        return amountInVND.divide(getRate(toCurrency).getRateToVnd(), 2, RoundingMode.HALF_UP);
+    }
+
+    public Map<String, ExchangeRateResponse> asMap() {
+        return rates;
+    }
+
+    /**
+     * Rate set version: highest rate_version in exchange_rates
+     * (bumped on every rate write, identical on all nodes that loaded the same rows)
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public LocalDateTime getLoadedAt() {
+        return loadedAt;
+    }
+}
@@ -75,8 +75,10 @@ import java.util.List;
  *   - Remaining Amount = Total Amount - Deposit (đã trả 70%)
  *
  * CONVERT CURRENCY:
- * - Wooden Packaging Fee: CNY → VND (qua ExchangeRateService)
- * - Bubble Wrap Fee: CNY → VND (qua ExchangeRateService)
+ * - Wooden Packaging Fee: CNY → VND (qua ExchangeRateSnapshot)
+ * - Bubble Wrap Fee: CNY → VND (qua ExchangeRateSnapshot)
+ * - Caller truyền vào một snapshot duy nhất (ExchangeRateService.currentSnapshot())
+ *   → mọi phí trong một lần tính dùng cùng bộ tỷ giá
  * - Item Count Check: Đã tính bằng VND
  *
  * ACCESSORY DETECTION:
@@ -93,15 +95,13 @@ import java.util.List;
  *
  * ROUNDING:
  * - Service Fee: Làm tròn HALF_UP về số nguyên
- * - Currency conversion: Làm tròn theo ExchangeRateService
+ * - Currency conversion: Làm tròn theo ExchangeRateSnapshot
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class FeeCalculationService {
 
-    private final ExchangeRateService exchangeRateService;
-
     // Service fee is 1.5% of product cost
     private static final BigDecimal SERVICE_FEE_PERCENTAGE = new BigDecimal("1.5");
 
@@ -203,9 +203,10 @@ public class FeeCalculationService {
      * - Total: 42,500đ
      *
      * @param orderItems List các OrderItem cần kiểm đếm
+     * @param rates Snapshot tỷ giá dùng để convert sang CNY
      * @return Phí kiểm đếm hàng (VND)
      */
-    public BigDecimal calculateItemCountCheckFee(List<OrderItem> orderItems) {
+    public BigDecimal calculateItemCountCheckFee(List<OrderItem> orderItems, ExchangeRateSnapshot rates) {
         if (orderItems == null || orderItems.isEmpty()) {
             return BigDecimal.ZERO;
         }
@@ -224,7 +225,7 @@ public class FeeCalculationService {
 
             // Convert to CNY if needed
             if (!"CNY".equals(currency)) {
-                priceInCNY = exchangeRateService.convertCurrency(
+                priceInCNY = rates.convert(
                         priceInCNY,
                         currency,
                         "CNY"
@@ -314,13 +315,14 @@ public class FeeCalculationService {
      *
      * CONVERT VÀ RETURN:
      * - Fee tính bằng CNY
-     * - Convert CNY → VND qua ExchangeRateService
+     * - Convert CNY → VND qua ExchangeRateSnapshot
      * - Return fee bằng VND
      *
      * @param weightKg Trọng lượng hàng (kg)
+     * @param rates Snapshot tỷ giá dùng để convert CNY → VND
      * @return Phí đóng gỗ (VND)
      */
-    public BigDecimal calculateWoodenPackagingFee(BigDecimal weightKg) {
+    public BigDecimal calculateWoodenPackagingFee(BigDecimal weightKg, ExchangeRateSnapshot rates) {
         if (weightKg == null || weightKg.compareTo(BigDecimal.ZERO) <= 0) {
             return BigDecimal.ZERO;
         }
@@ -335,7 +337,7 @@ public class FeeCalculationService {
         }
 
         // Convert CNY to VND
-        BigDecimal feeInVND = exchangeRateService.convertCurrency(fee, "CNY", "VND");
+        BigDecimal feeInVND = rates.convert(fee, "CNY", "VND");
 
         log.info("Wooden packaging fee calculated: {}kg = {} CNY = {}đ", weightKg, fee, feeInVND);
 
@@ -364,13 +366,14 @@ public class FeeCalculationService {
      *
      * CONVERT VÀ RETURN:
      * - Fee tính bằng CNY
-     * - Convert CNY → VND qua ExchangeRateService
+     * - Convert CNY → VND qua ExchangeRateSnapshot
      * - Return fee bằng VND
      *
      * @param weightKg Trọng lượng hàng (kg)
+     * @param rates Snapshot tỷ giá dùng để convert CNY → VND
      * @return Phí bọc bong bóng (VND)
      */
-    public BigDecimal calculateBubbleWrapFee(BigDecimal weightKg) {
+    public BigDecimal calculateBubbleWrapFee(BigDecimal weightKg, ExchangeRateSnapshot rates) {
         if (weightKg == null || weightKg.compareTo(BigDecimal.ZERO) <= 0) {
             return BigDecimal.ZERO;
         }
@@ -385,7 +388,7 @@ public class FeeCalculationService {
         }
 
         // Convert CNY to VND
-        BigDecimal feeInVND = exchangeRateService.convertCurrency(fee, "CNY", "VND");
+        BigDecimal feeInVND = rates.convert(fee, "CNY", "VND");
 
         log.info("Bubble wrap fee calculated: {}kg = {} CNY = {}đ", weightKg, fee, feeInVND);
 
@@ -432,6 +435,7 @@ public class FeeCalculationService {
      * @param includeWoodenPackaging true nếu cần đóng gỗ
      * @param includeBubbleWrap true nếu cần bọc bong bóng
      * @param includeItemCountCheck true nếu cần kiểm đếm
+     * @param rates Snapshot tỷ giá dùng cho mọi conversion trong lần tính này
      * @return Tổng phí dịch vụ thêm (VND)
      */
     public BigDecimal calculateTotalAdditionalServicesFee(
@@ -439,20 +443,21 @@ public class FeeCalculationService {
             BigDecimal weightKg,
             boolean includeWoodenPackaging,
             boolean includeBubbleWrap,
-            boolean includeItemCountCheck
+            boolean includeItemCountCheck,
+            ExchangeRateSnapshot rates
     ) {
         BigDecimal total = BigDecimal.ZERO;
 
         if (includeItemCountCheck) {
-            total = total.add(calculateItemCountCheckFee(orderItems));
+            total = total.add(calculateItemCountCheckFee(orderItems, rates));
         }
 
         if (includeWoodenPackaging) {
-            total = total.add(calculateWoodenPackagingFee(weightKg));
+            total = total.add(calculateWoodenPackagingFee(weightKg, rates));
         }
 
         if (includeBubbleWrap) {
-            total = total.add(calculateBubbleWrapFee(weightKg));
+            total = total.add(calculateBubbleWrapFee(weightKg, rates));
         }
 
         return total;
@@ -1,6 +1,7 @@
 package com.aptech.aptechMall.service;
 
 import com.aptech.aptechMall.Exception.*;
+import com.aptech.aptechMall.dto.CursorPage;
 import com.aptech.aptechMall.dto.exchange.ExchangeRateResponse;
 import com.aptech.aptechMall.dto.order.CheckoutRequest;
 import com.aptech.aptechMall.dto.order.OrderResponse;
@@ -10,23 +11,32 @@ import com.aptech.aptechMall.dto.order.UpdateOrderStatusRequest;
 import com.aptech.aptechMall.entity.*;
 import com.aptech.aptechMall.repository.CartItemRepository;
 import com.aptech.aptechMall.repository.CartRepository;
+import com.aptech.aptechMall.repository.OrderItemRepository;
+import com.aptech.aptechMall.repository.OrderItemRepository.OrderItemTotals;
 import com.aptech.aptechMall.repository.OrderRepository;
+import com.aptech.aptechMall.repository.OrderRepository.OrderSummary;
 import com.aptech.aptechMall.repository.UserRepository;
 import com.aptech.aptechMall.repository.UserWalletRepository;
-import com.aptech.aptechMall.repository.WalletTransactionRepository;
 import com.aptech.aptechMall.security.AuthenticationUtil;
+import com.aptech.aptechMall.service.wallet.WalletLedgerService;
 import com.aptech.aptechMall.service.wallet.WalletService;
+import com.aptech.aptechMall.util.PageCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Service quản lý đơn hàng (Order Management)
@@ -101,12 +111,13 @@ import java.util.Random;
 public class OrderService {
 
     private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
     private final CartRepository cartRepository;
     private final CartItemRepository cartItemRepository;
     private final UserRepository userRepository;
     private final WalletService walletService;
     private final ExchangeRateService exchangeRateService;
-    private final WalletTransactionRepository walletTransactionRepository;
+    private final WalletLedgerService walletLedgerService;
     private final UserWalletRepository userWalletRepository;
     private final FeeCalculationService feeCalculationService;
 
@@ -294,6 +305,10 @@ public class OrderService {
         order.setPhone(request.getPhone());
         order.setNote(request.getNote());
 
+        // One rate snapshot for the whole order: a concurrent rate update cannot mix rates between items
+        ExchangeRateSnapshot rates = exchangeRateService.currentSnapshot();
+        order.setExchangeRateVersion(rates.getVersion());
+
         // Copy selected cart items to order items and calculate total in VND
         BigDecimal totalVND = BigDecimal.ZERO;
         for (CartItem cartItem : itemsToCheckout) {
@@ -313,7 +328,7 @@ public class OrderService {
             BigDecimal itemTotal = cartItem.getSubtotal();
             String currency = inferCurrency(cartItem.getMarketplace());
 
-            ExchangeRateResponse exchangeRate = exchangeRateService.getRate(currency);
+            ExchangeRateResponse exchangeRate = rates.getRate(currency);
 
             // Validate exchange rate value
             if (exchangeRate.getRateToVnd() == null ||
@@ -358,8 +373,8 @@ public class OrderService {
         // Set totalAmount (for wallet payment, this is same as deposit for now)
         order.setTotalAmount(depositAmount);
 
-        log.info("Order amounts - Product: {} VND, Service Fee: {} VND (1.5%), Total Cost: {} VND, Deposit: {} VND, Remaining: {} VND",
-                totalVND, serviceFee, totalCost, depositAmount, remainingAmount);
+        log.info("Order amounts - Product: {} VND, Service Fee: {} VND (1.5%), Total Cost: {} VND, Deposit: {} VND, Remaining: {} VND (rate version {})",
+                totalVND, serviceFee, totalCost, depositAmount, remainingAmount, rates.getVersion());
 
         // Get wallet and check balance
         UserWallet wallet = walletService.getOrCreateWallet(userId);
@@ -375,32 +390,19 @@ public class OrderService {
                     shortfall, wallet.getBalance(), depositAmount));
         }
 
-        // Record balance before and after (calculate new balance)
-        BigDecimal balanceBefore = wallet.getBalance();
-        BigDecimal balanceAfter = balanceBefore.subtract(depositAmount);
-
         // Save order first to get ID (if this fails, nothing is committed)
         Order savedOrder = orderRepository.save(order);
         log.info("Order {} saved with ID {}", savedOrder.getOrderNumber(), savedOrder.getId());
 
-        // Create wallet transaction record (linked to order)
-        WalletTransaction transaction = WalletTransaction.builder()
-                .wallet(wallet)
+        // Trừ tiền cọc + ghi ledger bằng UPDATE có điều kiện (balance >= deposit)
+        // Check số dư ở trên chỉ để báo lỗi thân thiện; nếu deposit/checkout khác chen vào → debit fail → rollback cả order
+        WalletTransaction transaction = walletLedgerService.debit(wallet, WalletTransaction.builder()
                 .transactionType(TransactionType.ORDER_PAYMENT)
                 .amount(depositAmount)
-                .balanceBefore(balanceBefore)
-                .balanceAfter(balanceAfter)
                 .order(savedOrder)
                 .description(String.format("Order deposit payment for order #%s", savedOrder.getOrderNumber()))
-                .build();
-
-        walletTransactionRepository.save(transaction);
-
-        // NOW update wallet balance and save (last step, atomic with transaction)
-        // If this fails, entire transaction will rollback including order and transaction record
-        wallet.setBalance(balanceAfter);
-        userWalletRepository.save(wallet);
-        log.info("Wallet balance updated: {} VND -> {} VND", balanceBefore, balanceAfter);
+                .build());
+        log.info("Wallet balance updated: {} VND -> {} VND", transaction.getBalanceBefore(), transaction.getBalanceAfter());
         log.info("Created order {} with {} items, total: {}",
                 savedOrder.getOrderNumber(),
                 savedOrder.getItems().size(),
@@ -438,7 +440,8 @@ public class OrderService {
      * - Return Page object với totalElements, totalPages, content[]
      *
      * RESPONSE FORMAT:
-     * - Dùng OrderResponse.toSummary() để tối ưu performance
+     * - Summary projection: chỉ SELECT cột hiển thị trong danh sách, không load entity Order
+     * - totalItems/itemCount/thumbnail của cả trang lấy bằng 1 query gộp trên order_items
      * - Không load OrderItems trong summary list (chỉ load khi getOrderDetail)
      *
      * @param userId User ID (từ JWT token)
@@ -446,6 +449,7 @@ public class OrderService {
      * @return Page<OrderResponse> với danh sách đơn hàng và metadata
      * @throws UserNotFoundException nếu user không tồn tại
      */
+    @Transactional(readOnly = true)
     public Page<OrderResponse> getUserOrders(Long userId, Pageable pageable) {
         log.info("Getting orders for user {} with pagination", userId);
 
@@ -454,10 +458,39 @@ public class OrderService {
             throw new UserNotFoundException(userId);
         }
 
-        Page<Order> orders = orderRepository.findByUserIdOrderByCreatedAtDesc(userId, pageable);
+        Page<OrderSummary> orders = orderRepository.findSummariesByUserId(userId, pageable);
         log.info("Found {} orders for user {}", orders.getTotalElements(), userId);
 
-        return orders.map(OrderResponse::toSummary);
+        return orders.map(summaryMapper(orders.getContent()));
+    }
+
+    /**
+     * Lấy danh sách đơn hàng của user - keyset pagination (cursor)
+     *
+     * Trang sau lấy theo cursor (createdAt, id) của đơn cuối trang trước:
+     * - Index (userId, createdAt, id) → MySQL đọc đúng size + 1 dòng, không bỏ qua offset
+     * - Không COUNT(*) mỗi trang; totalCount chỉ tính khi includeTotal = true
+     *
+     * @param userId User ID (từ JWT token)
+     * @param cursor Cursor từ trang trước (null = trang đầu)
+     * @param size Số đơn mỗi trang (tối đa PageCursor.MAX_PAGE_SIZE)
+     * @param includeTotal Có trả về tổng số đơn hay không
+     * @return CursorPage<OrderResponse> (summary) với nextCursor
+     * @throws UserNotFoundException nếu user không tồn tại
+     * @throws IllegalArgumentException nếu cursor không hợp lệ
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<OrderResponse> getUserOrdersPage(Long userId, String cursor, Integer size, boolean includeTotal) {
+        if (!userRepository.existsById(userId)) {
+            throw new UserNotFoundException(userId);
+        }
+
+        PageCursor position = PageCursor.decode(cursor);
+        Slice<OrderSummary> orders = orderRepository.findSummariesByUserIdBefore(
+                userId, position.createdAt(), position.id(), PageCursor.limit(size));
+        Long total = includeTotal ? orderRepository.countByUserId(userId) : null;
+
+        return CursorPage.of(orders, OrderService::cursorOf, total).map(summaryMapper(orders.getContent()));
     }
 
     /**
@@ -553,9 +586,8 @@ public class OrderService {
      * 2. Check order có thể hủy không (isCancellable)
      * 3. Nếu đã thanh toán deposit:
      *    - Load wallet của user
-     *    - Cộng tiền vào wallet (wallet.deposit())
-     *    - Save wallet
-     *    - Tạo refund transaction record
+     *    - Cộng tiền + ghi refund transaction qua WalletLedgerService.credit()
+     *      (UPDATE số dư có điều kiện, không đọc-sửa-ghi balance trong Java)
      * 4. Set order status = CANCELLED
      * 5. Save order và return response
      *
@@ -597,26 +629,14 @@ public class OrderService {
             UserWallet wallet = userWalletRepository.findByUserUserId(userId)
                     .orElseThrow(() -> new RuntimeException("Wallet not found for user: " + userId));
 
-            // Record balance before refund
-            BigDecimal balanceBefore = wallet.getBalance();
-
-            // Refund the deposit amount
-            wallet.deposit(order.getDepositAmount());
-            userWalletRepository.save(wallet);
-
-            // Create refund transaction record
-            WalletTransaction refundTransaction = WalletTransaction.builder()
-                    .wallet(wallet)
+            // Hoàn cọc + ghi ledger (UPDATE nguyên tử)
+            walletLedgerService.credit(wallet, WalletTransaction.builder()
                     .transactionType(TransactionType.ORDER_REFUND)
                     .amount(order.getDepositAmount())
-                    .balanceBefore(balanceBefore)
-                    .balanceAfter(wallet.getBalance())
                     .order(order)
                     .description(String.format("Refund for cancelled order %s", order.getOrderNumber()))
                     .referenceNumber(order.getOrderNumber())
-                    .build();
-
-            walletTransactionRepository.save(refundTransaction);
+                    .build());
 
             log.info("Refunded {} to user {} wallet for cancelled order {}",
                     order.getDepositAmount(), userId, orderId);
@@ -692,10 +712,10 @@ public class OrderService {
      * 2. Check payment status (chưa thanh toán hết)
      * 3. Check remainingAmount > 0
      * 4. Load wallet và check locked/balance
-     * 5. Trừ tiền từ wallet (wallet.withdraw)
-     * 6. Tạo WalletTransaction với type ORDER_PAYMENT
-     * 7. Update order.paymentStatus = WALLET_PAID
-     * 8. Save và return OrderResponse
+     * 5. Trừ tiền + tạo WalletTransaction ORDER_PAYMENT qua WalletLedgerService.debit()
+     *    (UPDATE ... WHERE balance >= amount → không thể trừ âm khi chạy đồng thời)
+     * 6. Update order.paymentStatus = WALLET_PAID
+     * 7. Save và return OrderResponse
      *
      * TRANSACTION:
      * - @Transactional: Atomic operation
@@ -748,26 +768,14 @@ public class OrderService {
             ));
         }
 
-        // Record balance before deduction
-        BigDecimal balanceBefore = wallet.getBalance();
-
-        // Deduct remaining amount from wallet
-        wallet.withdraw(order.getRemainingAmount());
-        userWalletRepository.save(wallet);
-
-        // Create wallet transaction record
-        WalletTransaction transaction = WalletTransaction.builder()
-                .wallet(wallet)
+        // Trừ tiền + ghi ledger bằng UPDATE có điều kiện (balance >= remaining)
+        walletLedgerService.debit(wallet, WalletTransaction.builder()
                 .transactionType(TransactionType.ORDER_PAYMENT)
                 .amount(order.getRemainingAmount())
-                .balanceBefore(balanceBefore)
-                .balanceAfter(wallet.getBalance())
                 .order(order)
                 .description(String.format("Remaining payment for order %s (30%% + fees)", order.getOrderNumber()))
                 .referenceNumber(order.getOrderNumber())
-                .build();
-
-        walletTransactionRepository.save(transaction);
+                .build());
 
         // Update order payment status
         order.setPaymentStatus(OrderPaymentStatus.WALLET_PAID);
@@ -811,26 +819,91 @@ public class OrderService {
      * @param userId (Optional) Filter theo user ID
      * @return Page<OrderResponse> với danh sách đơn hàng
      */
+    @Transactional(readOnly = true)
     public Page<OrderResponse> getAllOrders(Pageable pageable, OrderStatus status, Long userId) {
         log.info("Admin getting all orders - status: {}, userId: {}", status, userId);
 
-        Page<Order> orders;
+        // Summary projection: chỉ cột hiển thị trong danh sách, index (status/userId, createdAt, id)
+        // Mỗi tổ hợp filter 1 query riêng → SQL chỉ chứa filter đang dùng
+        Page<OrderSummary> orders;
+        if (userId != null && status != null) {
+            orders = orderRepository.findSummariesByUserIdAndStatus(userId, status, pageable);
+        } else if (userId != null) {
+            orders = orderRepository.findSummariesByUserId(userId, pageable);
+        } else if (status != null) {
+            orders = orderRepository.findSummariesByStatus(status, pageable);
+        } else {
+            orders = orderRepository.findSummaries(pageable);
+        }
+
+        return orders.map(summaryMapper(orders.getContent()));
+    }
 
+    /**
+     * Lấy tất cả đơn hàng (Admin) - keyset pagination (cursor)
+     *
+     * Cùng filter với getAllOrders nhưng không dùng offset: trang sâu không chậm dần,
+     * không COUNT(*) mỗi trang (totalCount chỉ khi includeTotal = true)
+     *
+     * @param status (Optional) Filter theo order status
+     * @param userId (Optional) Filter theo user ID
+     * @param cursor Cursor từ trang trước (null = trang đầu)
+     * @param size Số đơn mỗi trang (tối đa PageCursor.MAX_PAGE_SIZE)
+     * @param includeTotal Có trả về tổng số đơn hay không
+     * @return CursorPage<OrderResponse> với nextCursor
+     * @throws IllegalArgumentException nếu cursor không hợp lệ
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<OrderResponse> getAllOrdersPage(OrderStatus status, Long userId, String cursor,
+                                                     Integer size, boolean includeTotal) {
+        PageCursor position = PageCursor.decode(cursor);
+        LocalDateTime at = position.createdAt();
+        Pageable limit = PageCursor.limit(size);
+
+        Slice<OrderSummary> orders;
+        Long total = null;
         if (userId != null && status != null) {
-            // Filter by both userId and status
-            orders = orderRepository.findByUserIdAndStatusOrderByCreatedAtDesc(userId, status, pageable);
+            orders = orderRepository.findSummariesByUserIdAndStatusBefore(userId, status, at, position.id(), limit);
+            if (includeTotal) {
+                total = orderRepository.countByUserIdAndStatus(userId, status);
+            }
         } else if (userId != null) {
-            // Filter by userId only
-            orders = orderRepository.findByUserIdOrderByCreatedAtDesc(userId, pageable);
+            orders = orderRepository.findSummariesByUserIdBefore(userId, at, position.id(), limit);
+            if (includeTotal) {
+                total = orderRepository.countByUserId(userId);
+            }
         } else if (status != null) {
-            // Filter by status only
-            orders = orderRepository.findByStatusOrderByCreatedAtDesc(status, pageable);
+            orders = orderRepository.findSummariesByStatusBefore(status, at, position.id(), limit);
+            if (includeTotal) {
+                total = orderRepository.countByStatus(status);
+            }
         } else {
-            // No filter - get all orders
-            orders = orderRepository.findAllByOrderByCreatedAtDesc(pageable);
+            orders = orderRepository.findSummariesBefore(at, position.id(), limit);
+            if (includeTotal) {
+                total = orderRepository.count();
+            }
         }
 
-        return orders.map(OrderResponse::fromEntity);
+        return CursorPage.of(orders, OrderService::cursorOf, total).map(summaryMapper(orders.getContent()));
+    }
+
+    /**
+     * Map summary projection → OrderResponse
+     *
+     * totalItems/itemCount/thumbnail của cả trang lấy bằng 1 query gộp trên order_items
+     * (Order.getTotalItems() sẽ lazy-load items của từng đơn → N+1)
+     */
+    private Function<OrderSummary, OrderResponse> summaryMapper(List<OrderSummary> page) {
+        Map<Long, OrderItemTotals> totals = page.isEmpty()
+                ? Map.of()
+                : orderItemRepository.summarizeByOrderIds(page.stream().map(OrderSummary::getId).toList())
+                        .stream()
+                        .collect(Collectors.toMap(OrderItemTotals::getOrderId, Function.identity()));
+        return summary -> OrderResponse.fromSummary(summary, totals.get(summary.getId()));
+    }
+
+    private static PageCursor cursorOf(OrderSummary order) {
+        return new PageCursor(order.getCreatedAt(), order.getId());
     }
 
     /**
@@ -999,10 +1072,14 @@ public class OrderService {
             );
         }
 
+        // All CNY conversions below use the same rate snapshot
+        ExchangeRateSnapshot rates = exchangeRateService.currentSnapshot();
+        order.setExchangeRateVersion(rates.getVersion());
+
         // Update domestic shipping fee (from China warehouse to port)
         if (request.getDomesticShippingFee() != null) {
             // Convert CNY to VND
-            BigDecimal domesticFeeVND = exchangeRateService.convertCurrency(
+            BigDecimal domesticFeeVND = rates.convert(
                     request.getDomesticShippingFee(),
                     "CNY",
                     "VND"
@@ -1030,7 +1107,8 @@ public class OrderService {
                 request.getEstimatedWeight() != null ? request.getEstimatedWeight() : BigDecimal.ZERO,
                 request.getIncludeWoodenPackaging() != null && request.getIncludeWoodenPackaging(),
                 request.getIncludeBubbleWrap() != null && request.getIncludeBubbleWrap(),
-                request.getIncludeItemCountCheck() != null && request.getIncludeItemCountCheck()
+                request.getIncludeItemCountCheck() != null && request.getIncludeItemCountCheck(),
+                rates
         );
 
         // Store additional services fee in order
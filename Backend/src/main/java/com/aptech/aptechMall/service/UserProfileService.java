@@ -4,6 +4,7 @@ import com.aptech.aptechMall.dto.user.ChangeEmailRequest;
 import com.aptech.aptechMall.dto.user.ChangePasswordRequest;
 import com.aptech.aptechMall.model.jpa.User;
 import com.aptech.aptechMall.repository.UserRepository;
+import com.aptech.aptechMall.service.authentication.PrincipalCache;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +23,7 @@ public class UserProfileService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
 
     /**
      * Change user's password
@@ -97,6 +99,7 @@ public class UserProfileService {
         String oldEmail = user.getEmail();
         user.setEmail(request.getNewEmail());
         userRepository.save(user);
+        principalCache.userChanged(user);
 
         log.info("Email changed successfully for user {}: {} -> {}",
                 userId, oldEmail, request.getNewEmail());
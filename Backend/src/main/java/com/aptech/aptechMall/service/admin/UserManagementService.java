@@ -7,6 +7,7 @@ import com.aptech.aptechMall.repository.UserRepository;
 import com.aptech.aptechMall.security.AuthenticationUtil;
 import com.aptech.aptechMall.security.Role;
 import com.aptech.aptechMall.security.Status;
+import com.aptech.aptechMall.service.authentication.PrincipalCache;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -99,6 +100,7 @@ import java.util.stream.Collectors;
 public class UserManagementService {
 
     private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
     private UserResponseDTO toDTO(User user) {
         UserResponseDTO dto = new UserResponseDTO();
@@ -164,6 +166,7 @@ public class UserManagementService {
         });
 
         userRepository.save(user);
+        principalCache.userChanged(user); // role/status trong token cũ không còn đúng
         return toDTO(user);
     }
 
@@ -199,6 +202,7 @@ public class UserManagementService {
                     if (dto.getRole() != null) existingUser.setRole(dto.getRole());
                     if (dto.getStatus() != null) existingUser.setStatus(dto.getStatus());
                     User updated = userRepository.save(existingUser);
+                    principalCache.userChanged(updated); // role/status trong token cũ không còn đúng
                     return toDTO(updated);
                 })
                 .orElseThrow(() -> new RuntimeException("User not found with id: " + id));
@@ -228,5 +232,6 @@ public class UserManagementService {
         }
 
         userRepository.deleteById(id);
+        principalCache.userDeleted(id);
     }
 }
@@ -7,7 +7,6 @@ import com.aptech.aptechMall.security.Role;
 import com.aptech.aptechMall.security.requests.*;
 import com.aptech.aptechMall.service.FileUploadService;
 import io.jsonwebtoken.*;
-import jakarta.persistence.EntityExistsException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -21,7 +20,6 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Service xử lý xác thực và quản lý người dùng (Authentication Service)
@@ -49,7 +47,7 @@ import java.util.concurrent.TimeUnit;
  * - UserRepository: Truy vấn database users
  * - PasswordEncoder: Hash và verify password
  * - JwtService: Tạo và validate JWT tokens
- * - RedisService: Quản lý token blacklist
+ * - TokenBlacklistService: Quản lý token blacklist (Redis + bloom filter local)
  * - FileUploadService: Upload avatar người dùng
  */
 @Slf4j
@@ -59,8 +57,9 @@ public class AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtService jwtService;
-    private final RedisService redisService;
+    private final TokenBlacklistService tokenBlacklistService;
     private final FileUploadService fileUploadService;
+    private final PrincipalCache principalCache;
 
     /**
      * Lấy thông tin profile của user hiện tại từ JWT token
@@ -131,6 +130,7 @@ public class AuthService {
             user.setAvatarUrl(avatarFilePath);
 
             userRepository.save(user);
+            principalCache.userChanged(user);
 
             return ProfileResponse.builder()
                     .username(user.getUsername())
@@ -220,12 +220,17 @@ public class AuthService {
         var currentRefreshToken = refreshTokenCookie.getValue();
 
         // Check token blacklist if Redis is available
+        boolean blacklisted = false;
         try {
-            if(redisService.hasToken(currentRefreshToken))
-                throw new EntityExistsException("Refresh Token haven't yet been invalidated or expired");
+            blacklisted = tokenBlacklistService.isBlacklisted(currentRefreshToken);
         } catch (Exception e) {
             log.warn("Redis not available for token blacklist check: " + e.getMessage());
         }
+        // Checked outside the try so a revoked refresh token (logout / logout-all) is really rejected → 401
+        if (blacklisted) {
+            log.warn("Rejected blacklisted refresh token");
+            return null;
+        }
 
         revokeToken(currentRefreshToken);
         if(currentRefreshToken != null) {
@@ -283,19 +288,44 @@ public class AuthService {
         Cookie refreshTokenCookie = Arrays.stream(request.getCookies()).filter(cookie -> cookie.getName().equals("refresh_token")).findFirst().orElseThrow();
         revokeToken(accessToken.substring(7));
         revokeToken(refreshTokenCookie.getValue());
+        evictPrincipal(accessToken.substring(7));
         revokeRefreshTokenCookie(response, refreshTokenCookie);
     }
 
     private void revokeToken(String token) {
         try {
-            var expirationTime = (jwtService.extractExpiration(token).getTime() - System.currentTimeMillis()) / 1000;
-            redisService.setToken(token, "blacklisted", expirationTime, TimeUnit.SECONDS);
+            tokenBlacklistService.blacklist(jwtService.parseAndValidate(token), token);
         } catch (Exception e) {
             log.warn("Redis not available for token revocation: " + e.getMessage());
             // Token won't be blacklisted, but app will continue to work
         }
     }
 
+    /**
+     * Đăng xuất khỏi TẤT CẢ thiết bị
+     *
+     * Ghi watermark "token phát hành trước thời điểm này" cho user (O(1), không cần liệt kê token),
+     * sau đó xử lý như logout thường cho thiết bị hiện tại
+     */
+    public void logoutAll(HttpServletRequest request, HttpServletResponse response) {
+        String accessToken = request.getHeader("Authorization");
+        Long userId = jwtService.extractUserId(accessToken.substring(7));
+        try {
+            tokenBlacklistService.revokeAllTokens(userId);
+        } catch (Exception e) {
+            log.warn("Redis not available for token revocation: " + e.getMessage());
+        }
+        logout(request, response);
+    }
+
+    private void evictPrincipal(String token) {
+        try {
+            principalCache.evict(jwtService.extractUserId(token));
+        } catch (Exception e) {
+            log.debug("No userId in token, nothing to evict: {}", e.getMessage());
+        }
+    }
+
     private void revokeRefreshTokenCookie(HttpServletResponse response, Cookie refreshTokenCookie) {
         refreshTokenCookie.setMaxAge(0);
         refreshTokenCookie.setSecure(true);
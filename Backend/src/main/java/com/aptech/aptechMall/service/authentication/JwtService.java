@@ -2,10 +2,14 @@ package com.aptech.aptechMall.service.authentication;
 
 import com.aptech.aptechMall.model.jpa.User;
 import com.aptech.aptechMall.repository.UserRepository;
+import com.aptech.aptechMall.security.Role;
+import com.aptech.aptechMall.security.Status;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -13,8 +17,10 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.security.SecureRandom;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +45,7 @@ import java.util.function.Function;
  * - email: Email của user
  * - fullname: Tên đầy đủ
  * - status: Trạng thái tài khoản
+ * - jti: Token ID ngắn (22 ký tự base64url) - key của blacklist khi logout
  * - iat: Thời gian phát hành (issued at)
  * - exp: Thời gian hết hạn (expiration)
  *
@@ -51,6 +58,11 @@ import java.util.function.Function;
  * - Secret key phải được mã hóa Base64
  * - Token có thể bị blacklist khi logout (quản lý bởi RedisService)
  *
+ * HIỆU NĂNG:
+ * - SecretKey và JwtParser được build MỘT lần lúc khởi động (thread-safe, immutable)
+ * - Filter dùng {@link #parseAndValidate(String)}: parse + verify signature + check expiration
+ *   đúng 1 lần, rồi đọc mọi thông tin từ Claims trả về
+ *
  * Thư viện: io.jsonwebtoken (JJWT)
  */
 @Service
@@ -62,10 +74,35 @@ public class JwtService {
     @Value("${jwt.secret-key}") // Đọc từ application.properties
     private String secretKey;
 
+    // Build một lần từ secretKey (xem init())
+    private SecretKey key;
+    private JwtParser parser;
+
+    /**
+     * Request attribute chứa Claims đã verify (set bởi TokenBlacklistFilter, dùng lại ở JwtAuthenticationFilter)
+     */
+    public static final String CLAIMS_ATTRIBUTE = JwtService.class.getName() + ".claims";
+
+    private static final SecureRandom TOKEN_ID_RANDOM = new SecureRandom();
+
     // TTL của tokens - sử dụng Duration API để an toàn và rõ ràng
-    private static final Duration ACCESS_TOKEN_TTL = Duration.ofMinutes(30); // 30 phút
+    protected static final Duration ACCESS_TOKEN_TTL = Duration.ofMinutes(30); // 30 phút
     protected static final Duration REFRESH_TOKEN_TTL = Duration.ofDays(30); // 30 ngày
 
+    /**
+     * Decode secret key và build parser một lần
+     *
+     * Trước đây mỗi lần extract claim đều decode Base64 + tạo key + tạo parser mới
+     */
+    @PostConstruct
+    void init() {
+        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
+        this.key = Keys.hmacShaKeyFor(keyBytes);
+        this.parser = Jwts.parser()
+                .verifyWith(key) // Verify signature với secret key
+                .build();
+    }
+
     /**
      * Tạo JWT token từ username/email
      *
@@ -155,6 +192,7 @@ public class JwtService {
                 .claims()
                 .add(claims) // Thêm custom claims
                 .subject(subject) // Username hoặc email
+                .id(newTokenId()) // jti - dùng để blacklist khi logout
                 .issuedAt(Date.from(now)) // Thời gian phát hành
                 .expiration(Date.from(expirationTime)) // Thời gian hết hạn
                 .and()
@@ -162,16 +200,39 @@ public class JwtService {
                 .compact();
     }
 
+    /**
+     * Token ID ngẫu nhiên 128-bit, base64url không padding (22 ký tự)
+     */
+    private static String newTokenId() {
+        byte[] bytes = new byte[16];
+        TOKEN_ID_RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
     /**
      * Lấy SecretKey để sign và verify JWT
      *
-     * Secret key được decode từ Base64 string trong application.properties
+     * Secret key được decode từ Base64 string trong application.properties (một lần, trong init())
      *
      * @return SecretKey object
      */
     private SecretKey getKey(){
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return key;
+    }
+
+    /**
+     * Parse, verify signature và check expiration MỘT lần
+     *
+     * Dùng cho filter: mọi thông tin cần thiết (subject, userId, role, ...) đọc từ Claims trả về,
+     * không parse lại token
+     *
+     * @param token JWT token
+     * @return Claims đã verify
+     * @throws io.jsonwebtoken.ExpiredJwtException nếu token hết hạn
+     * @throws io.jsonwebtoken.JwtException nếu token invalid hoặc signature không khớp
+     */
+    public Claims parseAndValidate(String token) {
+        return extractAllClaims(token);
     }
 
     /**
@@ -215,6 +276,35 @@ public class JwtService {
         return ((Number) userIdObj).longValue();
     }
 
+    /**
+     * Build principal (User) từ claims đã verify (xem {@link #parseAndValidate(String)}) - không query database
+     *
+     * User trả về chỉ chứa: userId, username, email, fullName, role, status
+     * (đủ cho AuthenticationUtil và @PreAuthorize). KHÔNG phải managed entity, không được save.
+     *
+     * @param claims Claims đã verify
+     * @return User build từ claims, hoặc null nếu token cũ thiếu userId/role/status claim
+     */
+    public User extractPrincipal(Claims claims) {
+        Object userId = claims.get("userId");
+        String role = claims.get("role", String.class);
+        String status = claims.get("status", String.class);
+        if (!(userId instanceof Number) || role == null || status == null) {
+            return null;
+        }
+
+        String email = claims.get("email", String.class);
+        String subject = claims.getSubject();
+        return User.builder()
+                .userId(((Number) userId).longValue())
+                .username(subject != null && !subject.equals(email) ? subject : null)
+                .email(email)
+                .fullName(claims.get("fullname", String.class))
+                .role(Role.fromString(role))
+                .status(Status.fromString(status))
+                .build();
+    }
+
     /**
      * Trích xuất một claim cụ thể từ JWT token
      *
@@ -240,10 +330,8 @@ public class JwtService {
      * @throws JwtException nếu token invalid hoặc signature không khớp
      */
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getKey()) // Verify signature với secret key
-                .build()
-                .parseSignedClaims(token)
+        return parser
+                .parseSignedClaims(token) // Verify signature + expiration
                 .getPayload();
     }
 
@@ -259,8 +347,19 @@ public class JwtService {
      * @return true nếu token hợp lệ
      */
     public boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateToken(extractAllClaims(token), userDetails);
+    }
+
+    /**
+     * Validate claims đã verify với UserDetails - không parse lại token
+     *
+     * @param claims Claims từ {@link #parseAndValidate(String)}
+     * @param userDetails Principal của user
+     * @return true nếu subject khớp và token chưa hết hạn
+     */
+    public boolean validateToken(Claims claims, UserDetails userDetails) {
+        final String username = claims.getSubject();
+        return (username.equals(userDetails.getUsername()) && claims.getExpiration().after(new Date()));
     }
 
     /**
@@ -273,13 +372,6 @@ public class JwtService {
         return extractExpiration(jwtToken).after(new Date());
     }
 
-    /**
-     * Kiểm tra token đã hết hạn chưa
-     */
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
     /**
      * Lấy thời gian hết hạn của token
      *
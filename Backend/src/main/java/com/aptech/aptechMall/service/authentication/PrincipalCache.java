@@ -0,0 +1,199 @@
+package com.aptech.aptechMall.service.authentication;
+
+import com.aptech.aptechMall.model.jpa.User;
+import com.aptech.aptechMall.repository.UserRepository;
+import com.aptech.aptechMall.security.Status;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache principal (User) đã xác thực theo userId
+ *
+ * Tại sao cần:
+ * - Trước đây JwtAuthenticationFilter gọi loadUserByUsername (query MySQL) cho MỌI request
+ * - Giờ principal được build từ claims trong JWT (userId, role, status, email, fullname) → không query DB
+ *
+ * Vấn đề: claims là bản chụp lúc phát hành token. Khi admin đổi role/status,
+ * token cũ vẫn mang role/status cũ cho đến khi hết hạn (30 phút).
+ *
+ * Giải pháp:
+ * - Principal build từ claims được cache ngắn hạn (default 5m, bounded)
+ * - Khi role/status/profile thay đổi → {@link #userChanged(User)} ghim (pin) principal mới (từ DB) và
+ *   giữ nó đến khi mọi access token cũ hết hạn (ACCESS_TOKEN_TTL), thay vì build lại từ claims cũ
+ * - Khi user bị xóa → {@link #userDeleted(Long)} ghim principal DELETED → filter reject token cũ
+ * - Node khác nhận userId qua Redis channel "auth:principal-changed" → load user theo id (1 query / thay đổi)
+ *
+ * Pin + publish chạy SAU KHI transaction commit (TransactionSynchronization.afterCommit):
+ * - Rollback → không ghim role/status chưa từng được lưu
+ * - Node khác reload từ DB khi thay đổi đã commit → không ghim lại giá trị cũ
+ *
+ * Principal ghim nằm trong map riêng (không bị giới hạn maximumSize), hết hạn sau ACCESS_TOKEN_TTL:
+ * size eviction của cache claims không thể làm "sống lại" principal cũ đã bị thu hồi.
+ * - Logout → {@link #evict(Long)}
+ *
+ * Cấu hình:
+ * - security.principal-cache.ttl       Thời gian cache principal build từ claims (default 5m)
+ * - security.principal-cache.max-size  Số user tối đa trong cache (default 10000)
+ */
+@Slf4j
+@Component
+public class PrincipalCache {
+
+    public static final String CHANGED_CHANNEL = "auth:principal-changed";
+
+    private final UserRepository userRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Cache<Long, User> principals;
+    private final Map<Long, Pinned> pinned = new ConcurrentHashMap<>();
+    private final long pinnedTtlNanos = JwtService.ACCESS_TOKEN_TTL.toNanos();
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public PrincipalCache(UserRepository userRepository,
+                          StringRedisTemplate redisTemplate,
+                          RedisMessageListenerContainer listenerContainer,
+                          @Value("${security.principal-cache.ttl:5m}") Duration ttl,
+                          @Value("${security.principal-cache.max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 2);
+            if (parts.length == 2 && !nodeId.equals(parts[0])) {
+                reload(Long.valueOf(parts[1]));
+            }
+        }, new ChannelTopic(CHANGED_CHANNEL));
+    }
+
+    /**
+     * Lấy principal của user
+     *
+     * @param userId User ID từ claim "userId"
+     * @param fromClaims Build principal từ claims (chỉ gọi khi cache miss)
+     * @return Principal đã cache, hoặc principal mới build từ claims
+     */
+    public User get(Long userId, Supplier<User> fromClaims) {
+        Pinned entry = pinned.get(userId);
+        if (entry != null) {
+            if (!entry.isExpired(System.nanoTime())) {
+                return entry.principal();
+            }
+            pinned.remove(userId, entry);
+        }
+        return principals.get(userId, id -> fromClaims.get());
+    }
+
+    /**
+     * Gọi sau khi role/status của user thay đổi (trong transaction đã save vào DB)
+     *
+     * Principal mới được ghim sau khi commit, giữ đến khi các token mang claims cũ hết hạn
+     *
+     * @param user User đã cập nhật
+     */
+    public void userChanged(User user) {
+        afterCommit(() -> {
+            pin(user.getUserId(), user);
+            publish(user.getUserId());
+        });
+    }
+
+    /**
+     * Gọi sau khi user bị xóa - token còn hạn của user sẽ bị reject (sau khi commit)
+     *
+     * @param userId ID của user đã xóa
+     */
+    public void userDeleted(Long userId) {
+        afterCommit(() -> {
+            pin(userId, deleted(userId));
+            publish(userId);
+        });
+    }
+
+    /**
+     * Chạy action sau khi transaction hiện tại commit (bỏ qua nếu rollback).
+     * Không có transaction (gọi trực tiếp) → chạy ngay.
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void publish(Long userId) {
+        try {
+            redisTemplate.convertAndSend(CHANGED_CHANNEL, nodeId + "|" + userId);
+        } catch (Exception e) {
+            log.warn("Redis not available for principal invalidation: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Xóa principal build từ claims của user (logout)
+     *
+     * Principal ghim được giữ lại: token khác của user (thiết bị khác) vẫn mang claims cũ
+     */
+    public void evict(Long userId) {
+        if (userId != null) {
+            principals.invalidate(userId);
+        }
+    }
+
+    private void reload(Long userId) {
+        User user = userRepository.findById(userId).orElseGet(() -> deleted(userId));
+        pin(userId, user);
+        log.debug("Principal of user {} reloaded after change on another node", userId);
+    }
+
+    private void pin(Long userId, User principal) {
+        long now = System.nanoTime();
+        // Dọn entry hết hạn (chỉ chạy khi có thay đổi role/status → hiếm, map nhỏ)
+        pinned.values().removeIf(entry -> entry.isExpired(now));
+        pinned.put(userId, new Pinned(principal, now + pinnedTtlNanos));
+        principals.invalidate(userId);
+    }
+
+    private static User deleted(Long userId) {
+        return User.builder().userId(userId).status(Status.DELETED).build();
+    }
+
+    /**
+     * Principal lấy từ DB sau khi role/status thay đổi, giữ tới expiresAtNanos (System.nanoTime)
+     */
+    private record Pinned(User principal, long expiresAtNanos) {
+
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
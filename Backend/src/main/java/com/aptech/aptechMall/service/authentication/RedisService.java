@@ -2,10 +2,14 @@ package com.aptech.aptechMall.service.authentication;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service quản lý JWT Token Blacklist với Redis
@@ -15,10 +19,11 @@ import java.util.concurrent.TimeUnit;
  * - Kiểm tra xem token có trong blacklist không
  *
  * CÁCH HOẠT ĐỘNG:
- * Khi user logout, access token được thêm vào Redis với:
- * - Key: JWT token string
- * - Value: "blacklisted" hoặc username
+ * Khi user logout, token được thêm vào Redis với (xem TokenBlacklistService):
+ * - Key: "bl:jti:{jti}" (token cũ không có jti: JWT token string)
+ * - Value: thời điểm token hết hạn (epoch millis)
  * - TTL: Thời gian còn lại đến khi token hết hạn
+ * Logout tất cả thiết bị: "bl:user:{userId}" = thời điểm (epoch seconds), token có iat trước đó bị reject
  *
  * Tại sao dùng Redis:
  * - In-memory database → cực nhanh (microseconds)
@@ -83,4 +88,39 @@ public class RedisService {
     public boolean hasToken(String token){
         return redisTemplate.hasKey(token);
     }
+
+    /**
+     * Duyệt các key khớp pattern bằng SCAN (không block Redis như KEYS)
+     *
+     * Dùng bởi TokenBlacklistService để build lại bloom filter khi khởi động
+     *
+     * @param pattern Glob pattern (vd "eyJ*")
+     * @param consumer Xử lý từng key
+     */
+    public void scanKeys(String pattern, Consumer<String> consumer) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            cursor.forEachRemaining(consumer);
+        }
+    }
+
+    /**
+     * Đọc nhiều key trong 1 round-trip (MGET)
+     *
+     * @param keys Danh sách key
+     * @return Giá trị theo đúng thứ tự keys (null nếu key không tồn tại)
+     */
+    public List<String> multiGet(List<String> keys) {
+        return redisTemplate.opsForValue().multiGet(keys);
+    }
+
+    /**
+     * Đọc giá trị của key
+     *
+     * @param key Redis key
+     * @return Giá trị, hoặc null nếu key không tồn tại
+     */
+    public String getValue(String key) {
+        return redisTemplate.opsForValue().get(key);
+    }
 }
@@ -0,0 +1,112 @@
+package com.aptech.aptechMall.service.authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter chia theo thời điểm hết hạn của phần tử
+ *
+ * Mỗi bucket chứa các id hết hạn trong cùng một khoảng bucketWidth.
+ * Khi khoảng đó đã qua, cả bucket bị bỏ → filter không phình to theo thời gian
+ * và không cần xóa từng phần tử (bloom filter thường không hỗ trợ xóa).
+ *
+ * - mightContain = false → chắc chắn KHÔNG có
+ * - mightContain = true  → có thể có (false positive ~fpp), cần kiểm tra nguồn chính (Redis)
+ *
+ * Thread-safe: bit set bằng AtomicLongArray, bucket trong ConcurrentSkipListMap.
+ */
+public final class TimeBucketedBloomFilter {
+
+    private final long bucketWidthMillis;
+    private final int bitCount;
+    private final int hashCount;
+    private final ConcurrentSkipListMap<Long, AtomicLongArray> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param bucketWidth Độ rộng mỗi bucket theo thời điểm hết hạn
+     * @param expectedPerBucket Số phần tử dự kiến mỗi bucket
+     * @param fpp Tỷ lệ false positive mong muốn (vd 0.01)
+     */
+    public TimeBucketedBloomFilter(Duration bucketWidth, int expectedPerBucket, double fpp) {
+        this.bucketWidthMillis = bucketWidth.toMillis();
+        // Standard sizing: m = -n ln(p) / (ln 2)^2, k = m/n ln 2
+        this.bitCount = (int) Math.max(64, Math.ceil(-expectedPerBucket * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedPerBucket * Math.log(2)));
+    }
+
+    /**
+     * @param id Phần tử (token hoặc token id)
+     * @param expiresAtMillis Thời điểm hết hạn (epoch millis)
+     */
+    public void put(String id, long expiresAtMillis) {
+        long bucket = Math.floorDiv(expiresAtMillis, bucketWidthMillis);
+        AtomicLongArray bits = buckets.computeIfAbsent(bucket, b -> new AtomicLongArray((bitCount + 63) / 64));
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            int index = Math.floorMod(h1 + i * h2, bitCount);
+            long mask = 1L << index;
+            int word = index >>> 6;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0
+                    && !bits.compareAndSet(word, current, current | mask)) {
+                // Retry CAS
+            }
+        }
+    }
+
+    public boolean mightContain(String id) {
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (AtomicLongArray bits : buckets.values()) {
+            if (contains(bits, h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(AtomicLongArray bits, int h1, int h2) {
+        for (int i = 1; i <= hashCount; i++) {
+            int index = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get(index >>> 6) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bỏ các bucket mà mọi phần tử đã hết hạn
+     */
+    public void dropExpired(long nowMillis) {
+        Map<Long, AtomicLongArray> expired = buckets.headMap(Math.floorDiv(nowMillis, bucketWidthMillis));
+        expired.clear();
+    }
+
+    public int bucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * 64-bit FNV-1a over UTF-8 bytes, finished with a murmur3 mix for better bit spread
+     */
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,336 @@
+package com.aptech.aptechMall.service.authentication;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * Token blacklist: bloom filter local phía trước Redis
+ *
+ * Tại sao cần:
+ * - TokenBlacklistFilter check Redis cho MỌI request đã đăng nhập → 1 round-trip Redis / request
+ * - Gần như mọi câu trả lời là "không bị blacklist"
+ *
+ * Cách hoạt động:
+ * - Mỗi node giữ một {@link TimeBucketedBloomFilter} các token đã logout (bucket theo thời điểm token hết hạn)
+ * - Bloom nói "không có" → chắc chắn không bị blacklist → KHÔNG gọi Redis
+ * - Bloom nói "có thể có" → xác nhận bằng Redis (nguồn chính)
+ * - Logout trên node bất kỳ → ghi Redis + publish "auth:token-blacklisted" → mọi node thêm vào bloom
+ *
+ * KEY TRONG REDIS:
+ * - "bl:jti:{jti}" → token có jti claim (~30 bytes thay vì ~400 bytes của cả JWT)
+ * - "{JWT}"        → token cũ phát hành trước khi có jti (MIGRATION: tự hết sau REFRESH_TOKEN_TTL = 30 ngày,
+ *                    sau đó có thể bỏ nhánh legacy)
+ * - "bl:user:{userId}" → watermark "logout tất cả thiết bị": token có iat trước watermark bị reject.
+ *   Watermark được giữ local (Map) trên mọi node → check O(1), không gọi Redis
+ *
+ * Đúng đắn:
+ * - Restart: bloom rỗng → chưa "ready" → check Redis như cũ cho đến khi build xong từ Redis (SCAN)
+ * - TTL: token hết hạn bị Redis xóa; bucket của nó bị bỏ khỏi bloom (dropExpired)
+ * - Miss message (Redis chập chờn): bloom + watermarks được build lại định kỳ từ Redis (rebuild-interval)
+ * - Redis down: giữ hành vi cũ (log warning, cho request đi tiếp)
+ *
+ * Cấu hình:
+ * - security.token-blacklist.bloom-enabled        Bật bloom filter (default true)
+ * - security.token-blacklist.rebuild-interval     Chu kỳ build lại từ Redis (default 1m)
+ * - security.token-blacklist.bucket-width         Độ rộng bucket theo thời điểm hết hạn (default 1h)
+ * - security.token-blacklist.expected-per-bucket  Số token dự kiến / bucket (default 2000)
+ * - security.token-blacklist.fpp                  False positive rate (default 0.01)
+ *
+ * Metric: auth.token.blacklist.checks{result=bloom_negative|redis_hit|redis_miss|not_ready|revoked_all}
+ */
+@Slf4j
+@Service
+public class TokenBlacklistService {
+
+    static final String BLACKLISTED_CHANNEL = "auth:token-blacklisted";
+
+    static final String JTI_PREFIX = "bl:jti:";
+    static final String USER_PREFIX = "bl:user:";
+
+    // Legacy keys are the raw JWT, every JWT starts with the base64 of '{"'
+    private static final String LEGACY_TOKEN_PATTERN = "eyJ*";
+    private static final int SCAN_BATCH = 500;
+
+    // Message kinds on BLACKLISTED_CHANNEL: nodeId|kind|value|id
+    private static final String KIND_TOKEN = "T";
+    private static final String KIND_USER = "U";
+
+    private final RedisService redisService;
+    private final JwtService jwtService;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicReference<TimeBucketedBloomFilter> bloom = new AtomicReference<>();
+    private final AtomicReference<TimeBucketedBloomFilter> rebuilding = new AtomicReference<>();
+    private final Map<Long, Long> revokedBefore = new ConcurrentHashMap<>(); // userId → epoch seconds
+
+    @Value("${security.token-blacklist.bloom-enabled:true}")
+    private boolean bloomEnabled;
+
+    @Value("${security.token-blacklist.bucket-width:1h}")
+    private Duration bucketWidth;
+
+    @Value("${security.token-blacklist.expected-per-bucket:2000}")
+    private int expectedPerBucket;
+
+    @Value("${security.token-blacklist.fpp:0.01}")
+    private double fpp;
+
+    public TokenBlacklistService(RedisService redisService,
+                                 JwtService jwtService,
+                                 StringRedisTemplate redisTemplate,
+                                 RedisMessageListenerContainer listenerContainer,
+                                 MeterRegistry meterRegistry) {
+        this.redisService = redisService;
+        this.jwtService = jwtService;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (!bloomEnabled) {
+            return;
+        }
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 4);
+            if (parts.length != 4 || nodeId.equals(parts[0])) {
+                return;
+            }
+            if (KIND_USER.equals(parts[1])) {
+                revokedBefore.merge(Long.valueOf(parts[3]), Long.valueOf(parts[2]), Math::max);
+            } else {
+                addToBloom(parts[3], Long.parseLong(parts[2]));
+            }
+        }, new ChannelTopic(BLACKLISTED_CHANNEL));
+    }
+
+    /**
+     * Blacklist token đến khi nó hết hạn
+     *
+     * @param claims Claims đã verify của token
+     * @param token JWT token string (chỉ dùng cho token cũ không có jti)
+     */
+    public void blacklist(Claims claims, String token) {
+        long expiresAtMillis = claims.getExpiration().getTime();
+        long ttlSeconds = (expiresAtMillis - System.currentTimeMillis()) / 1000;
+        String id = blacklistId(claims, token);
+        redisService.setToken(redisKey(claims, token), String.valueOf(expiresAtMillis), ttlSeconds, TimeUnit.SECONDS);
+        addToBloom(id, expiresAtMillis);
+        publish(KIND_TOKEN, expiresAtMillis, id);
+    }
+
+    /**
+     * Thu hồi MỌI token đã phát hành cho user (logout tất cả thiết bị) - O(1)
+     *
+     * Ghi watermark "bl:user:{userId}" = now, token có iat trước đó bị reject.
+     * Watermark sống bằng REFRESH_TOKEN_TTL: sau đó mọi token cũ đã tự hết hạn.
+     *
+     * @param userId User ID
+     */
+    public void revokeAllTokens(Long userId) {
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        redisService.setToken(USER_PREFIX + userId, String.valueOf(nowSeconds),
+                JwtService.REFRESH_TOKEN_TTL.toSeconds(), TimeUnit.SECONDS);
+        revokedBefore.merge(userId, nowSeconds, Math::max);
+        publish(KIND_USER, nowSeconds, String.valueOf(userId));
+    }
+
+    /**
+     * Kiểm tra token có bị blacklist không
+     *
+     * Chỉ gọi Redis khi bloom filter báo "có thể có" (hoặc bloom chưa sẵn sàng)
+     *
+     * @param claims Claims đã verify của token
+     * @param token JWT token string
+     * @return true nếu token đã logout
+     */
+    public boolean isBlacklisted(Claims claims, String token) {
+        if (isRevokedByWatermark(claims)) {
+            record("revoked_all");
+            return true;
+        }
+
+        String key = redisKey(claims, token);
+        TimeBucketedBloomFilter current = bloom.get();
+        if (current == null) {
+            // Local state not loaded yet (startup, Redis was down): ask Redis for both checks
+            record("not_ready");
+            return redisService.hasToken(key) || isRevokedInRedis(claims);
+        }
+        if (!current.mightContain(blacklistId(claims, token))) {
+            record("bloom_negative");
+            return false;
+        }
+        boolean blacklisted = redisService.hasToken(key);
+        record(blacklisted ? "redis_hit" : "redis_miss");
+        return blacklisted;
+    }
+
+    /**
+     * Như {@link #isBlacklisted(Claims, String)} nhưng tự parse token
+     *
+     * @throws io.jsonwebtoken.JwtException nếu token invalid hoặc hết hạn
+     */
+    public boolean isBlacklisted(String token) {
+        return isBlacklisted(jwtService.parseAndValidate(token), token);
+    }
+
+    private boolean isRevokedByWatermark(Claims claims) {
+        Long userId = userId(claims);
+        return userId != null && isIssuedBefore(claims, revokedBefore.get(userId));
+    }
+
+    private boolean isRevokedInRedis(Claims claims) {
+        Long userId = userId(claims);
+        if (userId == null) {
+            return false;
+        }
+        String before = redisService.getValue(USER_PREFIX + userId);
+        return before != null && isIssuedBefore(claims, Long.valueOf(before));
+    }
+
+    private static boolean isIssuedBefore(Claims claims, Long watermarkSeconds) {
+        return watermarkSeconds != null && claims.getIssuedAt() != null
+                && claims.getIssuedAt().getTime() / 1000 < watermarkSeconds;
+    }
+
+    private static Long userId(Claims claims) {
+        Object userId = claims.get("userId");
+        return userId instanceof Number number ? number.longValue() : null;
+    }
+
+    /**
+     * Build lại bloom filter + watermarks từ Redis
+     *
+     * Lần đầu chạy ngay khi khởi động; thất bại (Redis down) → giữ trạng thái cũ, thử lại ở chu kỳ sau
+     */
+    @Scheduled(fixedDelayString = "${security.token-blacklist.rebuild-interval:1m}")
+    public void rebuild() {
+        if (!bloomEnabled) {
+            return;
+        }
+        TimeBucketedBloomFilter fresh = newBloom();
+        rebuilding.set(fresh); // Broadcasts received during the scan go into both filters
+        try {
+            int[] count = {0};
+            scanValues(JTI_PREFIX + "*", (key, value) -> {
+                fresh.put(key.substring(JTI_PREFIX.length()), Long.parseLong(value));
+                count[0]++;
+            });
+            // MIGRATION: legacy full-token keys, gone once pre-jti tokens have expired
+            redisService.scanKeys(LEGACY_TOKEN_PATTERN, token -> {
+                try {
+                    fresh.put(token, jwtService.extractExpiration(token).getTime());
+                    count[0]++;
+                } catch (Exception e) {
+                    // Expired or not a token: Redis drops it on its own
+                }
+            });
+            scanValues(USER_PREFIX + "*", (key, value) ->
+                    revokedBefore.merge(Long.valueOf(key.substring(USER_PREFIX.length())), Long.valueOf(value), Math::max));
+
+            // Watermarks older than the longest token lifetime no longer match any valid token
+            long oldestRelevant = System.currentTimeMillis() / 1000 - JwtService.REFRESH_TOKEN_TTL.toSeconds();
+            revokedBefore.values().removeIf(before -> before < oldestRelevant);
+
+            fresh.dropExpired(System.currentTimeMillis());
+            bloom.set(fresh);
+            log.debug("Token blacklist bloom filter rebuilt ({} tokens, {} buckets, {} user watermarks)",
+                    count[0], fresh.bucketCount(), revokedBefore.size());
+        } catch (Exception e) {
+            log.warn("Redis not available for blacklist bloom rebuild: {}", e.getMessage());
+        } finally {
+            rebuilding.set(null);
+        }
+    }
+
+    /**
+     * SCAN keys theo pattern, đọc value theo lô bằng MGET
+     */
+    private void scanValues(String pattern, BiConsumer<String, String> consumer) {
+        List<String> batch = new ArrayList<>(SCAN_BATCH);
+        redisService.scanKeys(pattern, key -> {
+            batch.add(key);
+            if (batch.size() == SCAN_BATCH) {
+                flush(batch, consumer);
+            }
+        });
+        flush(batch, consumer);
+    }
+
+    private void flush(List<String> keys, BiConsumer<String, String> consumer) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String> values = redisService.multiGet(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            String value = values.get(i);
+            if (value != null) { // Expired between SCAN and MGET
+                try {
+                    consumer.accept(keys.get(i), value);
+                } catch (NumberFormatException e) {
+                    log.debug("Skipping malformed blacklist entry {}", keys.get(i));
+                }
+            }
+        }
+        keys.clear();
+    }
+
+    private static String blacklistId(Claims claims, String token) {
+        return claims.getId() != null ? claims.getId() : token;
+    }
+
+    private static String redisKey(Claims claims, String token) {
+        return claims.getId() != null ? JTI_PREFIX + claims.getId() : token;
+    }
+
+    private void publish(String kind, long value, String id) {
+        try {
+            redisTemplate.convertAndSend(BLACKLISTED_CHANNEL, nodeId + "|" + kind + "|" + value + "|" + id);
+        } catch (Exception e) {
+            log.warn("Redis not available for blacklist broadcast: {}", e.getMessage());
+        }
+    }
+
+    private void addToBloom(String id, long expiresAtMillis) {
+        TimeBucketedBloomFilter current = bloom.get();
+        if (current != null) {
+            current.put(id, expiresAtMillis);
+        }
+        TimeBucketedBloomFilter next = rebuilding.get();
+        if (next != null) {
+            next.put(id, expiresAtMillis);
+        }
+    }
+
+    private TimeBucketedBloomFilter newBloom() {
+        return new TimeBucketedBloomFilter(bucketWidth, expectedPerBucket, fpp);
+    }
+
+    private void record(String result) {
+        meterRegistry.counter("auth.token.blacklist.checks", "result", result).increment();
+    }
+}
@@ -1,13 +1,19 @@
 package com.aptech.aptechMall.service;
 
+import com.aptech.aptechMall.config.HttpClientFactory;
 import com.aptech.aptechMall.dto.ProductDetailDTO;
 import com.aptech.aptechMall.dto.ProductSearchDTO;
+import com.aptech.aptechMall.entity.Marketplace;
 import com.aptech.aptechMall.model.m1688.m1688ProductSearchResponse;
 import com.aptech.aptechMall.model.m1688.m1688ProductDetailResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.aptech.aptechMall.service.marketplace.OtApiResponseDecoder;
+import com.aptech.aptechMall.service.marketplace.ProductDetailCache;
+import com.aptech.aptechMall.service.marketplace.RequestCoalescer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -26,7 +32,9 @@ import java.util.List;
 public class m1688Service implements ProductMarketplaceService {
 
     private final WebClient webClient;
-    private final ObjectMapper objectMapper;
+    private final ProductDetailCache productDetailCache;
+    private final RequestCoalescer requestCoalescer;
+    private final OtApiResponseDecoder otApiResponseDecoder;
 
     @Value("${rapidapi.m1688.key}")
     private String apiKey;
@@ -36,31 +44,50 @@ public class m1688Service implements ProductMarketplaceService {
 
     public m1688Service(
             @Value("${rapidapi.m1688.base-url}") String baseUrl,
-            ObjectMapper objectMapper) {
+            ProductDetailCache productDetailCache,
+            RequestCoalescer requestCoalescer,
+            OtApiResponseDecoder otApiResponseDecoder,
+            HttpClientFactory httpClientFactory) {
 
-        // Increase buffer size to 10MB to handle large API responses
+        // Success bodies are streamed by OtApiResponseDecoder (never joined in memory), so the codec
+        // buffer only holds String bodies: upstream error bodies and review pages
         ExchangeStrategies strategies = ExchangeStrategies.builder()
                 .codecs(configurer -> configurer
                         .defaultCodecs()
-                        .maxInMemorySize(10 * 1024 * 1024)) // 10MB
+                        .maxInMemorySize(1024 * 1024)) // 1MB
                 .build();
 
+        // Dedicated connection pool so a slow upstream cannot exhaust the other marketplace's connections
         this.webClient = WebClient.builder()
                 .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClientFactory.create("m1688")))
                 .exchangeStrategies(strategies)
                 .defaultHeader("Accept", "application/json")
                 .defaultHeader("Content-Type", "application/json")
                 .build();
-        this.objectMapper = objectMapper;
+        this.productDetailCache = productDetailCache;
+        this.requestCoalescer = requestCoalescer;
+        this.otApiResponseDecoder = otApiResponseDecoder;
 
-        log.info("Alibaba1688Service: WebClient initialized with 10MB buffer size");
+        log.info("Alibaba1688Service: WebClient initialized (streaming JSON decoding, 1MB buffer for String bodies)");
     }
 
     /**
      * Search products using BatchSearchItemsFrame API (1688 format)
+     * Concurrent identical searches share one upstream call (RequestCoalescer)
      */
     public Mono<m1688ProductSearchResponse> searchProducts1688API(String keyword, String language,
                                                                     int framePosition, int frameSize) {
+        return requestCoalescer.execute(Marketplace.ALIBABA1688, "/BatchSearchItemsFrame",
+                List.of(keyword, language, framePosition, frameSize),
+                () -> fetchSearchItemsFrame(keyword, language, framePosition, frameSize));
+    }
+
+    /**
+     * Call upstream /BatchSearchItemsFrame directly (bypasses request coalescing)
+     */
+    private Mono<m1688ProductSearchResponse> fetchSearchItemsFrame(String keyword, String language,
+                                                                   int framePosition, int frameSize) {
         log.info("Searching 1688 products - keyword: {}, language: {}, framePosition: {}, frameSize: {}",
                 keyword, language, framePosition, frameSize);
 
@@ -83,24 +110,11 @@ public class m1688Service implements ProductMarketplaceService {
                                 return Mono.error(new RuntimeException("1688 API Error: " + errorBody));
                             });
                 })
-                .bodyToMono(String.class)
-                .doOnNext(jsonString -> {
-                    log.debug("Raw JSON response from 1688 API: {}",
-                            jsonString.substring(0, Math.min(500, jsonString.length())) + "...");
-                })
-                .flatMap(jsonString -> {
-                    try {
-                        m1688ProductSearchResponse response = objectMapper.readValue(
-                                jsonString, m1688ProductSearchResponse.class);
-                        log.info("Successfully parsed 1688 search results - ErrorCode: {}",
-                                response.getErrorCode());
-                        return Mono.just(response);
-                    } catch (Exception e) {
-                        log.error("Error parsing 1688 JSON: {}", e.getMessage());
-                        log.error("Problematic JSON: {}", jsonString);
-                        return Mono.error(new RuntimeException("JSON parsing error: " + e.getMessage(), e));
-                    }
-                })
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> otApiResponseDecoder.decode(body, m1688ProductSearchResponse.class,
+                        "1688 BatchSearchItemsFrame"))
+                .doOnNext(response -> log.info("Successfully parsed 1688 search results - ErrorCode: {}",
+                        response.getErrorCode()))
                 .timeout(Duration.ofSeconds(30))
                 .doOnError(WebClientResponseException.class, error ->
                         log.error("WebClient error (1688): Status={}, Body={}",
@@ -247,8 +261,18 @@ public class m1688Service implements ProductMarketplaceService {
 
     /**
      * Get product details by ID (full response)
+     * Served through ProductDetailCache (local + Redis, stale-while-revalidate)
      */
     public Mono<m1688ProductDetailResponse> getProductDetailsFull(String productId) {
+        return productDetailCache.get(Marketplace.ALIBABA1688, productId, m1688ProductDetailResponse.class,
+                () -> requestCoalescer.execute(Marketplace.ALIBABA1688, "/BatchGetItemFullInfo",
+                        List.of(productId), () -> fetchProductDetailsFull(productId)));
+    }
+
+    /**
+     * Call upstream /BatchGetItemFullInfo directly (bypasses cache)
+     */
+    private Mono<m1688ProductDetailResponse> fetchProductDetailsFull(String productId) {
         log.info("Getting 1688 product details for ID: {}", productId);
 
         return webClient.get()
@@ -268,28 +292,17 @@ public class m1688Service implements ProductMarketplaceService {
                                 return Mono.error(new RuntimeException("1688 API Error: " + errorBody));
                             });
                 })
-                .bodyToMono(String.class)
-                .doOnNext(jsonString -> {
-                    log.debug("Raw JSON response for 1688 product {}: {}", productId,
-                            jsonString.substring(0, Math.min(500, jsonString.length())) + "...");
-                })
-                .flatMap(jsonString -> {
-                    try {
-                        m1688ProductDetailResponse response = objectMapper.readValue(
-                                jsonString, m1688ProductDetailResponse.class);
-
-                        if (!"Ok".equalsIgnoreCase(response.getErrorCode())) {
-                            log.error("1688 API returned error: {}", response.getErrorCode());
-                            return Mono.error(new RuntimeException("1688 API Error: " + response.getErrorCode()));
-                        }
-
-                        log.info("Successfully parsed 1688 product details for ID: {}", productId);
-                        return Mono.just(response);
-                    } catch (Exception e) {
-                        log.error("Error parsing 1688 JSON for product {}: {}", productId, e.getMessage());
-                        log.error("Problematic JSON: {}", jsonString);
-                        return Mono.error(new RuntimeException("JSON parsing error: " + e.getMessage(), e));
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> otApiResponseDecoder.decode(body, m1688ProductDetailResponse.class,
+                        "1688 product " + productId))
+                .flatMap(response -> {
+                    if (!"Ok".equalsIgnoreCase(response.getErrorCode())) {
+                        log.error("1688 API returned error: {}", response.getErrorCode());
+                        return Mono.error(new RuntimeException("1688 API Error: " + response.getErrorCode()));
                     }
+
+                    log.info("Successfully parsed 1688 product details for ID: {}", productId);
+                    return Mono.just(response);
                 })
                 .timeout(Duration.ofSeconds(30))
                 .doOnError(WebClientResponseException.class, error ->
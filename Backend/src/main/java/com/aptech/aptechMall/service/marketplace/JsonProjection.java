@@ -0,0 +1,220 @@
+package com.aptech.aptechMall.service.marketplace;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Include-list projection applied while JSON tokens stream in
+ *
+ * Only the declared paths are copied into the TokenBuffer, every other subtree is dropped
+ * as soon as it is read (never buffered, never bound). Arrays are transparent in paths:
+ * "Result.ProviderReviews.Content.UserNick" addresses UserNick in every review.
+ *
+ * Example:
+ * <pre>
+ * JsonProjection.builder()
+ *         .include("ErrorCode")
+ *         .include("Result.Item.Pictures")                  // whole subtree
+ *         .limit("Result.ProviderReviews.Content", 5)       // first 5 elements, total is counted
+ *         .include("Result.ProviderReviews.Content.UserNick")
+ *         .build();
+ * </pre>
+ *
+ * Immutable and thread-safe; per-response state lives in {@link Filter}.
+ */
+public final class JsonProjection {
+
+    private static final JsonProjection ALL = new JsonProjection(null, -1);
+
+    private final String path;
+    private final Map<String, JsonProjection> children;
+    private int limit; // Only set while building
+
+    private JsonProjection(String path, int limit) {
+        this.path = path;
+        this.children = new HashMap<>();
+        this.limit = limit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private JsonProjection child(String name) {
+        if (this == ALL) {
+            return ALL;
+        }
+        return children.get(name);
+    }
+
+    /**
+     * Start filtering one response
+     *
+     * @param parser Source parser (tokens are read from its current event)
+     * @param target Buffer receiving the projected tokens
+     */
+    public Filter newFilter(JsonParser parser, TokenBuffer target) {
+        return new Filter(this, parser, target);
+    }
+
+    public static final class Builder {
+        private final JsonProjection root = new JsonProjection("", -1);
+
+        /**
+         * Include path; a leaf path includes its whole subtree
+         */
+        public Builder include(String path) {
+            node(path, false);
+            return this;
+        }
+
+        /**
+         * Keep only the first {@code max} elements of the array at path.
+         * The real element count is reported by {@link Filter#arraySizes()}.
+         * Element fields still have to be included explicitly.
+         */
+        public Builder limit(String path, int max) {
+            node(path, true).limit = max;
+            return this;
+        }
+
+        private JsonProjection node(String path, boolean keepSelective) {
+            JsonProjection current = root;
+            String[] names = path.split("\\.");
+            for (int i = 0; i < names.length; i++) {
+                boolean leaf = i == names.length - 1;
+                String childPath = current.path.isEmpty() ? names[i] : current.path + "." + names[i];
+                JsonProjection next = current.children.get(names[i]);
+                if (next == ALL) {
+                    if (keepSelective && leaf) {
+                        throw new IllegalStateException("Cannot limit fully included path: " + path);
+                    }
+                    return ALL; // Already included with its whole subtree
+                }
+                if (next == null) {
+                    next = leaf && !keepSelective ? ALL : new JsonProjection(childPath, -1);
+                    current.children.put(names[i], next);
+                }
+                current = next;
+            }
+            return current;
+        }
+
+        public JsonProjection build() {
+            return root;
+        }
+    }
+
+    /**
+     * Per-response projection state
+     *
+     * Works token-by-token so it can be driven by a non-blocking parser:
+     * call {@link #onToken(JsonToken)} for every token except NOT_AVAILABLE.
+     */
+    public static final class Filter {
+        private final JsonProjection root;
+        private final JsonParser parser;
+        private final TokenBuffer target;
+
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private final Map<String, Integer> arraySizes = new HashMap<>();
+        private JsonProjection nextValue;
+        private boolean skipNextValue;
+        private int skipDepth;
+
+        private Filter(JsonProjection root, JsonParser parser, TokenBuffer target) {
+            this.root = root;
+            this.parser = parser;
+            this.target = target;
+        }
+
+        public void onToken(JsonToken token) throws IOException {
+            if (skipDepth > 0) {
+                if (token.isStructStart()) {
+                    skipDepth++;
+                } else if (token.isStructEnd()) {
+                    skipDepth--;
+                }
+                return;
+            }
+
+            Frame top = stack.peek();
+
+            if (token == JsonToken.FIELD_NAME) {
+                JsonProjection child = top.node.child(parser.currentName());
+                if (child == null) {
+                    skipNextValue = true;
+                } else {
+                    nextValue = child;
+                    target.copyCurrentEvent(parser);
+                }
+                return;
+            }
+
+            if (token.isStructEnd()) {
+                Frame closed = stack.pop();
+                if (closed.array && closed.node.limit >= 0) {
+                    arraySizes.put(closed.node.path, closed.index);
+                }
+                target.copyCurrentEvent(parser);
+                return;
+            }
+
+            // Value token (scalar or start of object/array)
+            JsonProjection node;
+            if (top == null) {
+                node = root;
+            } else if (top.array) {
+                top.index++;
+                if (top.node.limit >= 0 && top.index > top.node.limit) {
+                    skipValue(token);
+                    return;
+                }
+                node = top.node;
+            } else {
+                if (skipNextValue) {
+                    skipNextValue = false;
+                    skipValue(token);
+                    return;
+                }
+                node = nextValue;
+            }
+
+            target.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                stack.push(new Frame(node, token == JsonToken.START_ARRAY));
+            }
+        }
+
+        private void skipValue(JsonToken token) {
+            if (token.isStructStart()) {
+                skipDepth = 1;
+            }
+        }
+
+        /**
+         * Real sizes of limited arrays, keyed by path (e.g. "Result.ProviderReviews.Content")
+         */
+        public Map<String, Integer> arraySizes() {
+            return arraySizes;
+        }
+    }
+
+    private static final class Frame {
+        private final JsonProjection node;
+        private final boolean array;
+        private int index;
+
+        private Frame(JsonProjection node, boolean array) {
+            this.node = node;
+            this.array = array;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.aptech.aptechMall.service.marketplace;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Decoder for OtAPI (RapidAPI) JSON responses
+ *
+ * Default mode (streaming):
+ * - Each incoming DataBuffer is fed into Jackson's non-blocking parser and released immediately
+ * - Tokens are collected into a TokenBuffer, then bound to the target DTO
+ * - The raw JSON is never materialized (detail pages are ~2-5 MB), so the WebClient codecs
+ *   do not need a large maxInMemorySize; marketplace.decoding.max-bytes caps the body instead
+ *
+ * Projected mode ({@link #decodeProjected}):
+ * - Same streaming path, but only paths declared in a {@link JsonProjection} are kept
+ *
+ * Debug mode (marketplace.decoding.keep-raw-json=true):
+ * - Old behavior: join body into a String, log the first chars, log the full JSON on parse error
+ * - Only for {@link #decode}; projected decoding always streams
+ *
+ * Usage:
+ * <pre>
+ * webClient.get()...retrieve()
+ *         .bodyToFlux(DataBuffer.class)
+ *         .as(body -> otApiResponseDecoder.decode(body, SomeResponse.class, "context"))
+ * </pre>
+ */
+@Slf4j
+@Component
+public class OtApiResponseDecoder {
+
+    private static final int RAW_LOG_CHARS = 500;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${marketplace.decoding.keep-raw-json:false}")
+    private boolean keepRawJson;
+
+    @Value("${marketplace.decoding.max-bytes:10485760}")
+    private int maxBytes;
+
+    public OtApiResponseDecoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Decode response body into target type
+     *
+     * @param body Response body as DataBuffer stream
+     * @param type Target DTO class
+     * @param context Short description for logs (e.g. "AliExpress product 123")
+     * @return Mono containing decoded DTO, or error "JSON parsing error: ..."
+     */
+    public <T> Mono<T> decode(Flux<DataBuffer> body, Class<T> type, String context) {
+        if (keepRawJson) {
+            return decodeBuffered(body, type, context);
+        }
+        return decodeProjected(body, type, null, context).map(Projected::value);
+    }
+
+    /**
+     * Decode response body keeping only the paths declared in the projection
+     *
+     * Dropped subtrees are discarded while streaming (never buffered, never bound).
+     *
+     * @param body Response body as DataBuffer stream
+     * @param type Target class (projected fields are bound, the rest stay null)
+     * @param projection Paths to keep (null = whole document)
+     * @param context Short description for logs
+     * @return Mono containing projected DTO and real sizes of limited arrays
+     */
+    public <T> Mono<Projected<T>> decodeProjected(Flux<DataBuffer> body, Class<T> type,
+                                                  JsonProjection projection, String context) {
+        return Mono.using(
+                () -> new StreamingState(objectMapper, projection),
+                state -> body
+                        .doOnNext(buffer -> {
+                            try {
+                                state.feed(buffer, maxBytes);
+                            } catch (IOException e) {
+                                throw new DecodingException(e);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        })
+                        .then(Mono.fromCallable(() -> state.finish(type))),
+                StreamingState::close)
+                .onErrorMap(error -> !(error instanceof RuntimeException) || error instanceof DecodingException,
+                        error -> parsingError(context, error));
+    }
+
+    private <T> Mono<T> decodeBuffered(Flux<DataBuffer> body, Class<T> type, String context) {
+        return DataBufferUtils.join(body, maxBytes)
+                .map(buffer -> {
+                    try {
+                        return buffer.toString(StandardCharsets.UTF_8);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .flatMap(jsonString -> {
+                    log.debug("Raw JSON response for {}: {}...", context,
+                            jsonString.substring(0, Math.min(RAW_LOG_CHARS, jsonString.length())));
+                    try {
+                        return Mono.just(objectMapper.readValue(jsonString, type));
+                    } catch (Exception e) {
+                        log.error("Problematic JSON for {}: {}", context, jsonString);
+                        return Mono.error(parsingError(context, e));
+                    }
+                });
+    }
+
+    private RuntimeException parsingError(String context, Throwable error) {
+        Throwable cause = error instanceof DecodingException ? error.getCause() : error;
+        log.error("Error parsing JSON for {}: {}", context, cause.getMessage());
+        return new RuntimeException("JSON parsing error: " + cause.getMessage(), cause);
+    }
+
+    /**
+     * Per-response parser state (non-blocking parser + collected tokens)
+     */
+    private static final class StreamingState {
+        private final ObjectMapper objectMapper;
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        private final TokenBuffer tokens;
+        private final JsonProjection.Filter filter;
+        private long totalBytes;
+
+        StreamingState(ObjectMapper objectMapper, JsonProjection projection) throws IOException {
+            this.objectMapper = objectMapper;
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+            this.tokens = new TokenBuffer(parser);
+            this.filter = projection != null ? projection.newFilter(parser, tokens) : null;
+        }
+
+        void feed(DataBuffer buffer, long maxBytes) throws IOException {
+            int length = buffer.readableByteCount();
+            totalBytes += length;
+            if (totalBytes > maxBytes) {
+                throw new IOException("Response exceeds " + maxBytes + " bytes");
+            }
+
+            byte[] bytes = new byte[length];
+            buffer.read(bytes);
+            feeder.feedInput(bytes, 0, length);
+            drain();
+        }
+
+        <T> Projected<T> finish(Class<T> type) throws IOException {
+            feeder.endOfInput();
+            drain();
+            try (JsonParser tokenParser = tokens.asParser(objectMapper)) {
+                T value = objectMapper.readValue(tokenParser, type);
+                return new Projected<>(value, filter != null ? filter.arraySizes() : Map.of());
+            }
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (filter != null) {
+                    filter.onToken(token);
+                } else {
+                    tokens.copyCurrentEvent(parser);
+                }
+            }
+        }
+
+        void close() {
+            try {
+                parser.close();
+                tokens.close();
+            } catch (IOException ignored) {
+                // Nothing to release beyond memory
+            }
+        }
+    }
+
+    /**
+     * Decoded value plus real sizes of arrays truncated by the projection
+     */
+    public record Projected<T>(T value, Map<String, Integer> arraySizes) {
+    }
+
+    /**
+     * Unchecked wrapper so IOExceptions can escape doOnNext
+     */
+    private static final class DecodingException extends RuntimeException {
+        DecodingException(IOException cause) {
+            super(cause);
+        }
+    }
+}
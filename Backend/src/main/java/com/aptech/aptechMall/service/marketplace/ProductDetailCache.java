@@ -0,0 +1,230 @@
+package com.aptech.aptechMall.service.marketplace;
+
+import com.aptech.aptechMall.entity.Marketplace;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache for marketplace product details (OtAPI /BatchGetItemFullInfo)
+ *
+ * Tier 1: bounded in-process Caffeine cache (per marketplace, size + TTL eviction)
+ * Tier 2: Redis (shared between nodes, same instance used by RedisService)
+ *
+ * Each entry has two ages:
+ * - fresh-ttl: entry is served as-is
+ * - stale-ttl: entry is still served, but a background reload is triggered
+ *   (stale-while-revalidate). After stale-ttl the entry is evicted.
+ *
+ * Redis errors never fail the request - the cache simply falls through to the upstream loader.
+ *
+ * Metrics (tag marketplace=ALIEXPRESS|ALIBABA1688):
+ * - marketplace.product.cache.requests{result=hit_local|hit_redis|stale|miss}
+ * - marketplace.product.cache.evictions{cause=...}
+ * - cache.* (Caffeine stats for the local tier, name=product-detail-{marketplace})
+ */
+@Slf4j
+@Component
+public class ProductDetailCache {
+
+    private static final String REDIS_KEY_PREFIX = "product:detail:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Marketplace, Policy> policies = new EnumMap<>(Marketplace.class);
+    private final Map<Marketplace, Cache<String, CachedDetail<?>>> localCaches = new EnumMap<>(Marketplace.class);
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    @Value("${marketplace.cache.redis-enabled:true}")
+    private boolean redisEnabled;
+
+    public ProductDetailCache(
+            StringRedisTemplate redisTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${marketplace.cache.aliexpress.fresh-ttl:10m}") Duration aliexpressFreshTtl,
+            @Value("${marketplace.cache.aliexpress.stale-ttl:1h}") Duration aliexpressStaleTtl,
+            @Value("${marketplace.cache.aliexpress.max-size:2000}") long aliexpressMaxSize,
+            @Value("${marketplace.cache.m1688.fresh-ttl:30m}") Duration m1688FreshTtl,
+            @Value("${marketplace.cache.m1688.stale-ttl:2h}") Duration m1688StaleTtl,
+            @Value("${marketplace.cache.m1688.max-size:2000}") long m1688MaxSize) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+
+        register(Marketplace.ALIEXPRESS, new Policy(aliexpressFreshTtl, aliexpressStaleTtl, aliexpressMaxSize));
+        register(Marketplace.ALIBABA1688, new Policy(m1688FreshTtl, m1688StaleTtl, m1688MaxSize));
+    }
+
+    private void register(Marketplace marketplace, Policy policy) {
+        Cache<String, CachedDetail<?>> cache = Caffeine.newBuilder()
+                .maximumSize(policy.maxSize())
+                .expireAfterWrite(policy.staleTtl())
+                .recordStats()
+                .removalListener((String key, CachedDetail<?> value, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        meterRegistry.counter("marketplace.product.cache.evictions",
+                                "marketplace", marketplace.name(), "cause", cause.name()).increment();
+                    }
+                })
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "product-detail-" + marketplace.name());
+        policies.put(marketplace, policy);
+        localCaches.put(marketplace, cache);
+
+        log.info("Product detail cache for {}: freshTtl={}, staleTtl={}, maxSize={}",
+                marketplace, policy.freshTtl(), policy.staleTtl(), policy.maxSize());
+    }
+
+    /**
+     * Get product detail from cache, falling back to the upstream loader on miss
+     *
+     * @param marketplace Marketplace owning the product
+     * @param productId Product ID
+     * @param type Response type (used to deserialize the Redis tier)
+     * @param loader Upstream call, only subscribed on miss or background refresh
+     * @return Mono containing cached or freshly loaded product detail
+     */
+    public <T> Mono<T> get(Marketplace marketplace, String productId, Class<T> type, Supplier<Mono<T>> loader) {
+        Cache<String, CachedDetail<?>> localCache = localCaches.get(marketplace);
+        Policy policy = policies.get(marketplace);
+
+        CachedDetail<?> local = localCache.getIfPresent(productId);
+        if (local != null && type.isInstance(local.value())) {
+            return Mono.just(serve(marketplace, productId, type, type.cast(local.value()),
+                    local.loadedAt(), policy, loader, "hit_local"));
+        }
+
+        return readRedis(marketplace, productId, type)
+                .map(remote -> {
+                    localCache.put(productId, remote);
+                    return serve(marketplace, productId, type, remote.value(), remote.loadedAt(),
+                            policy, loader, "hit_redis");
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    record(marketplace, "miss");
+                    return loader.get().doOnNext(value -> store(marketplace, productId, value));
+                }));
+    }
+
+    /**
+     * Remove product from both tiers (e.g. when upstream reports the item is gone)
+     */
+    public void evict(Marketplace marketplace, String productId) {
+        localCaches.get(marketplace).invalidate(productId);
+        if (redisEnabled) {
+            try {
+                redisTemplate.delete(redisKey(marketplace, productId));
+            } catch (Exception e) {
+                log.warn("Failed to evict product {} from Redis cache: {}", productId, e.getMessage());
+            }
+        }
+    }
+
+    private <T> T serve(Marketplace marketplace, String productId, Class<T> type, T value, long loadedAt,
+                        Policy policy, Supplier<Mono<T>> loader, String result) {
+        long age = System.currentTimeMillis() - loadedAt;
+        if (age <= policy.freshTtl().toMillis()) {
+            record(marketplace, result);
+        } else {
+            record(marketplace, "stale");
+            refreshInBackground(marketplace, productId, loader);
+        }
+        return value;
+    }
+
+    private <T> void refreshInBackground(Marketplace marketplace, String productId, Supplier<Mono<T>> loader) {
+        String refreshKey = marketplace.name() + ":" + productId;
+        if (!refreshing.add(refreshKey)) {
+            return; // Refresh already in progress
+        }
+
+        log.debug("Refreshing stale product detail in background: {} {}", marketplace, productId);
+        loader.get()
+                .doFinally(signal -> refreshing.remove(refreshKey))
+                .subscribe(
+                        value -> store(marketplace, productId, value),
+                        error -> log.warn("Background refresh failed for {} product {}: {}",
+                                marketplace, productId, error.getMessage()));
+    }
+
+    private <T> void store(Marketplace marketplace, String productId, T value) {
+        CachedDetail<T> entry = new CachedDetail<>(System.currentTimeMillis(), value);
+        localCaches.get(marketplace).put(productId, entry);
+
+        if (!redisEnabled) {
+            return;
+        }
+
+        Duration ttl = policies.get(marketplace).staleTtl();
+        Mono.fromRunnable(() -> {
+                    try {
+                        String json = objectMapper.writeValueAsString(entry);
+                        redisTemplate.opsForValue().set(redisKey(marketplace, productId), json, ttl);
+                    } catch (Exception e) {
+                        log.warn("Failed to write product {} to Redis cache: {}", productId, e.getMessage());
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    private <T> Mono<CachedDetail<T>> readRedis(Marketplace marketplace, String productId, Class<T> type) {
+        if (!redisEnabled) {
+            return Mono.empty();
+        }
+
+        JavaType entryType = objectMapper.getTypeFactory().constructParametricType(CachedDetail.class, type);
+        return Mono.fromCallable(() -> redisTemplate.opsForValue().get(redisKey(marketplace, productId)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .<CachedDetail<T>>handle((json, sink) -> {
+                    try {
+                        sink.next(objectMapper.readValue(json, entryType));
+                    } catch (Exception e) {
+                        log.warn("Discarding unreadable Redis cache entry for product {}: {}", productId, e.getMessage());
+                    }
+                })
+                .onErrorResume(error -> {
+                    log.warn("Redis cache unavailable for product {}: {}", productId, error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private void record(Marketplace marketplace, String result) {
+        meterRegistry.counter("marketplace.product.cache.requests",
+                "marketplace", marketplace.name(), "result", result).increment();
+    }
+
+    private static String redisKey(Marketplace marketplace, String productId) {
+        return REDIS_KEY_PREFIX + marketplace.name() + ":" + productId;
+    }
+
+    /**
+     * Cached value with load timestamp (epoch millis) used for fresh/stale decision
+     */
+    public record CachedDetail<T>(long loadedAt, T value) {
+    }
+
+    private record Policy(Duration freshTtl, Duration staleTtl, long maxSize) {
+    }
+}
@@ -0,0 +1,122 @@
+package com.aptech.aptechMall.service.marketplace;
+
+import com.aptech.aptechMall.entity.Marketplace;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Single-flight layer for marketplace upstream calls
+ *
+ * Concurrent identical requests (same marketplace, endpoint and normalized params)
+ * share ONE upstream WebClient call instead of each triggering their own.
+ *
+ * - The first caller creates a cached Mono, later callers subscribe to the same Mono
+ * - A successful result may be reused for at most max-share (default 2s),
+ *   after that the next caller starts a new upstream call
+ * - Errors are never shared with later callers: the entry is dropped as soon as the call fails
+ *
+ * Metric: marketplace.requests.coalesced{marketplace, endpoint}
+ */
+@Slf4j
+@Component
+public class RequestCoalescer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final MeterRegistry meterRegistry;
+    private final Duration maxShare;
+    private final Cache<String, Mono<?>> inFlight;
+
+    public RequestCoalescer(
+            MeterRegistry meterRegistry,
+            @Value("${marketplace.coalescing.max-share:2s}") Duration maxShare,
+            @Value("${marketplace.coalescing.max-keys:10000}") long maxKeys) {
+        this.meterRegistry = meterRegistry;
+        this.maxShare = maxShare;
+        this.inFlight = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(maxShare.plus(Duration.ofSeconds(30))) // safety net for calls still running
+                .build();
+    }
+
+    /**
+     * Execute upstream call, sharing the result with concurrent identical requests
+     *
+     * @param marketplace Marketplace being called
+     * @param endpoint Upstream endpoint (e.g. "/BatchGetItemFullInfo")
+     * @param params Request parameters in a fixed order (normalized here)
+     * @param call Upstream call, subscribed once per coalesced group
+     * @return Shared Mono of the upstream result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(Marketplace marketplace, String endpoint, List<?> params, Supplier<Mono<T>> call) {
+        String key = buildKey(marketplace, endpoint, params);
+
+        return Mono.defer(() -> {
+            boolean[] created = {false};
+            Mono<T> shared = (Mono<T>) inFlight.asMap().computeIfAbsent(key, k -> {
+                created[0] = true;
+                return share(k, call);
+            });
+
+            if (!created[0]) {
+                meterRegistry.counter("marketplace.requests.coalesced",
+                        "marketplace", marketplace.name(), "endpoint", endpoint).increment();
+                log.debug("Coalesced request: {}", key);
+            }
+            return shared;
+        });
+    }
+
+    private <T> Mono<T> share(String key, Supplier<Mono<T>> call) {
+        AtomicReference<Mono<T>> self = new AtomicReference<>();
+        Mono<T> shared = Mono.defer(call)
+                .doOnError(error -> inFlight.asMap().remove(key, self.get()))
+                .doOnSuccess(value -> {
+                    if (value == null) {
+                        inFlight.asMap().remove(key, self.get());
+                    } else {
+                        // Drop the entry once the reuse window is over so the next caller fetches fresh data
+                        scheduleRemoval(key, self.get());
+                    }
+                })
+                .cache(value -> maxShare, error -> Duration.ZERO, () -> Duration.ZERO);
+        self.set(shared);
+        return shared;
+    }
+
+    private void scheduleRemoval(String key, Mono<?> entry) {
+        Mono.delay(maxShare)
+                .subscribe(tick -> inFlight.asMap().remove(key, entry));
+    }
+
+    /**
+     * Build coalescing key: marketplace|endpoint|param1|param2...
+     * String params are trimmed, whitespace-collapsed and lower-cased
+     */
+    static String buildKey(Marketplace marketplace, String endpoint, List<?> params) {
+        StringBuilder key = new StringBuilder(64)
+                .append(marketplace.name()).append('|').append(endpoint);
+        for (Object param : params) {
+            key.append('|');
+            if (param instanceof String str) {
+                key.append(WHITESPACE.matcher(str.trim()).replaceAll(" ").toLowerCase(Locale.ROOT));
+            } else {
+                key.append(param);
+            }
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,247 @@
+package com.aptech.aptechMall.service.wallet;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Bộ rule parse SMS của một ngân hàng (đã compile sẵn)
+ *
+ * Mỗi rule là 1 regex trích xuất 1 trường (số tiền, mã GD, username, user ID, email).
+ * Các rule cùng trường xếp theo độ ưu tiên: rule đứng trước thắng.
+ *
+ * Quét một lượt:
+ * - Tất cả rule được gộp thành MỘT pattern dạng {@code (?:(?=(rule0))|)(?:(?=(rule1))|)...}
+ * - Mỗi vị trí trong message được thử mọi rule đúng 1 lần (lookahead không tiêu thụ ký tự)
+ * - Lần match đầu tiên của mỗi rule được ghi lại → giống hệt kết quả {@code Matcher.find()} của từng rule riêng lẻ,
+ *   nhưng chỉ duyệt message một lần thay vì ~15 lần và không compile regex lúc parse
+ *
+ * Immutable, thread-safe: dùng chung giữa các request.
+ */
+public final class BankSmsGrammar {
+
+    public enum Field {
+        AMOUNT, REFERENCE, USERNAME, USER_ID, EMAIL
+    }
+
+    /**
+     * @param name Tên rule (để log/thống kê)
+     * @param field Trường mà rule trích xuất
+     * @param regex Regex chạy trên message đã uppercase
+     * @param group Group chứa giá trị (0 = toàn bộ match)
+     * @param prefix Tiền tố thêm vào mã GD (vd "GD"), chỉ dùng cho REFERENCE
+     * @param multiplier Hệ số nhân số tiền (vd 1000 cho "500K"), chỉ dùng cho AMOUNT
+     */
+    public record Rule(String name, Field field, String regex, int group, String prefix, BigDecimal multiplier) {
+
+        public static Rule amount(String name, String regex, long multiplier) {
+            return new Rule(name, Field.AMOUNT, regex, 1, "", BigDecimal.valueOf(multiplier));
+        }
+
+        public static Rule reference(String name, String regex, int group, String prefix) {
+            return new Rule(name, Field.REFERENCE, regex, group, prefix, BigDecimal.ONE);
+        }
+
+        public static Rule of(String name, Field field, String regex) {
+            return new Rule(name, field, regex, 1, "", BigDecimal.ONE);
+        }
+    }
+
+    /**
+     * Kết quả parse - trường nào không tìm thấy thì null
+     */
+    public record Result(BigDecimal amount, String reference, String username, Long userId, String email) {
+    }
+
+    /**
+     * Nhận kết quả của từng rule đã được thử khi resolve một trường
+     *
+     * matched = true: rule cho giá trị của trường; false: rule không match / giá trị bị loại.
+     * Rule đứng sau rule thắng không được thử → không được báo.
+     */
+    @FunctionalInterface
+    public interface RuleListener {
+        RuleListener NONE = (ruleIndex, matched) -> { };
+
+        void onRule(int ruleIndex, boolean matched);
+    }
+
+    private static final Pattern USER_ID_TOKEN = Pattern.compile("USER\\d+");
+    private static final Set<String> RESERVED_WORDS = Set.of("VND", "GD", "ND", "SD", "TK");
+
+    private final String name;
+    private final List<Rule> rules;
+    private final Pattern scanner;
+    /** Group của giá trị trong scanner, theo thứ tự rules */
+    private final int[] valueGroups;
+    /** Index các rule của từng trường, theo thứ tự ưu tiên */
+    private final Map<Field, int[]> rulesByField = new EnumMap<>(Field.class);
+
+    public BankSmsGrammar(String name, List<Rule> rules) {
+        this.name = name;
+        this.rules = List.copyOf(rules);
+        this.valueGroups = new int[this.rules.size()];
+
+        StringBuilder combined = new StringBuilder();
+        int groupOffset = 0;
+        for (int i = 0; i < this.rules.size(); i++) {
+            Rule rule = this.rules.get(i);
+            int ruleGroups = Pattern.compile(rule.regex()).matcher("").groupCount();
+            if (rule.group() > ruleGroups) {
+                throw new IllegalArgumentException("Rule " + rule.name() + " has no group " + rule.group());
+            }
+            // Wrapper group (offset + 1) là toàn bộ match của rule, group của rule nằm ngay sau
+            valueGroups[i] = groupOffset + 1 + rule.group();
+            combined.append("(?:(?=(").append(rule.regex()).append("))|)");
+            groupOffset += ruleGroups + 1;
+        }
+        this.scanner = Pattern.compile(combined.toString());
+
+        for (Field field : Field.values()) {
+            rulesByField.put(field, IntStream.range(0, this.rules.size())
+                    .filter(i -> this.rules.get(i).field() == field)
+                    .toArray());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Rule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Parse message (đã uppercase + trim)
+     */
+    public Result parse(String message) {
+        return parse(message, RuleListener.NONE);
+    }
+
+    /**
+     * Parse message (đã uppercase + trim), báo kết quả từng rule cho listener
+     */
+    public Result parse(String message, RuleListener listener) {
+        String[] firstMatches = scan(message);
+        return new Result(
+                amount(firstMatches, listener),
+                reference(firstMatches, listener),
+                username(firstMatches, listener),
+                userId(firstMatches, listener),
+                email(firstMatches, listener)
+        );
+    }
+
+    /**
+     * Quét message một lượt, trả về giá trị match đầu tiên của mỗi rule (null nếu rule không match)
+     */
+    private String[] scan(String message) {
+        String[] firstMatches = new String[rules.size()];
+        int remaining = rules.size();
+        Matcher matcher = scanner.matcher(message);
+        while (remaining > 0 && matcher.find()) {
+            for (int i = 0; i < firstMatches.length; i++) {
+                if (firstMatches[i] == null) {
+                    String value = matcher.group(valueGroups[i]);
+                    if (value != null) {
+                        firstMatches[i] = value;
+                        remaining--;
+                    }
+                }
+            }
+        }
+        return firstMatches;
+    }
+
+    private BigDecimal amount(String[] firstMatches, RuleListener listener) {
+        for (int i : rulesByField.get(Field.AMOUNT)) {
+            String value = firstMatches[i];
+            if (value != null) {
+                try {
+                    BigDecimal amount = new BigDecimal(value.replace(",", "")).multiply(rules.get(i).multiplier());
+                    listener.onRule(i, true);
+                    return amount;
+                } catch (NumberFormatException e) {
+                    // Vd "+," → thử rule tiếp theo
+                }
+            }
+            listener.onRule(i, false);
+        }
+        return null;
+    }
+
+    private String reference(String[] firstMatches, RuleListener listener) {
+        for (int i : rulesByField.get(Field.REFERENCE)) {
+            if (firstMatches[i] != null) {
+                listener.onRule(i, true);
+                return rules.get(i).prefix() + firstMatches[i].replace('.', '_');
+            }
+            listener.onRule(i, false);
+        }
+        return null;
+    }
+
+    private String username(String[] firstMatches, RuleListener listener) {
+        for (int i : rulesByField.get(Field.USERNAME)) {
+            String value = firstMatches[i];
+            // USER{id} do userId xử lý, MBVCB/VND/GD... là từ khóa của ngân hàng
+            if (value != null
+                    && !USER_ID_TOKEN.matcher(value).matches()
+                    && !value.startsWith("MBVCB")
+                    && !RESERVED_WORDS.contains(value)) {
+                listener.onRule(i, true);
+                return value;
+            }
+            listener.onRule(i, false);
+        }
+        return null;
+    }
+
+    private Long userId(String[] firstMatches, RuleListener listener) {
+        for (int i : rulesByField.get(Field.USER_ID)) {
+            if (firstMatches[i] != null) {
+                try {
+                    Long userId = Long.parseLong(firstMatches[i]);
+                    listener.onRule(i, true);
+                    return userId;
+                } catch (NumberFormatException e) {
+                    // Số quá lớn → thử rule tiếp theo
+                }
+            }
+            listener.onRule(i, false);
+        }
+        return null;
+    }
+
+    private String email(String[] firstMatches, RuleListener listener) {
+        for (int i : rulesByField.get(Field.EMAIL)) {
+            if (firstMatches[i] != null) {
+                listener.onRule(i, true);
+                return firstMatches[i].toLowerCase();
+            }
+            listener.onRule(i, false);
+        }
+        return null;
+    }
+
+    /**
+     * Tạo grammar chỉ gồm các rule được chọn (giữ nguyên thứ tự)
+     */
+    public static BankSmsGrammar of(String name, List<Rule> all, Set<String> ruleNames) {
+        List<Rule> selected = new ArrayList<>();
+        for (Rule rule : all) {
+            if (ruleNames.contains(rule.name())) {
+                selected.add(rule);
+            }
+        }
+        return new BankSmsGrammar(name, selected);
+    }
+}
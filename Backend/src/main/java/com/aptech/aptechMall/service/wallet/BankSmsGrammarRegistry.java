@@ -0,0 +1,345 @@
+package com.aptech.aptechMall.service.wallet;
+
+import com.aptech.aptechMall.entity.BankSmsGrammarRule;
+import com.aptech.aptechMall.entity.BankSmsSender;
+import com.aptech.aptechMall.repository.BankSmsGrammarRuleRepository;
+import com.aptech.aptechMall.repository.BankSmsSenderRepository;
+import com.aptech.aptechMall.service.wallet.BankSmsGrammar.Field;
+import com.aptech.aptechMall.service.wallet.BankSmsGrammar.Rule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Registry grammar parse SMS theo ngân hàng (sender → grammar)
+ *
+ * Nguồn grammar:
+ * - Built-in: DEFAULT (mọi rule), MBBANK (có mã MBVCB), STANDARD (ngân hàng khác)
+ * - Config table bank_sms_grammar_rules: các rule cùng bank_code tạo thành 1 grammar,
+ *   THAY THẾ grammar built-in cùng tên hoặc thêm ngân hàng mới
+ * - Config table bank_sms_senders: alias sender → bank_code (thêm/ghi đè alias built-in)
+ *
+ * Chọn grammar: alias khớp chính xác sender → alias dài nhất được chứa trong sender → DEFAULT.
+ * SMS của ngân hàng đã biết chỉ chạy rule của ngân hàng đó, không chạy cả cascade.
+ *
+ * HOT RELOAD:
+ * - Đọc lại config table định kỳ (bank-sms.grammar.reload-interval, default 1 phút)
+ * - Admin gọi reload → node hiện tại reload ngay + báo node khác qua Redis channel "bank-sms:grammar-changed"
+ * - Grammar có regex lỗi → log error, giữ grammar đang chạy của ngân hàng đó
+ * - Registry là snapshot immutable (AtomicReference) → request đang parse không bị ảnh hưởng khi reload
+ *
+ * METRICS:
+ * - bank.sms.grammar.rule{grammar, rule, result=match|miss}: rule được thử khi resolve 1 trường,
+ *   match = rule cho giá trị, miss = rule không match hoặc giá trị bị loại
+ */
+@Slf4j
+@Component
+public class BankSmsGrammarRegistry {
+
+    static final String CHANGED_CHANNEL = "bank-sms:grammar-changed";
+    static final String DEFAULT_CODE = "DEFAULT";
+
+    /**
+     * Rule built-in, theo priority order trong từng trường
+     */
+    static final List<Rule> BUILT_IN_RULES = List.of(
+            // +500k or +500K (MUST have + sign and K suffix) - trước "+500" để không bị đọc thành 500đ
+            Rule.amount("AMOUNT_PLUS_K", "[+]([0-9]+)K", 1000),
+            // +500,000 VND or +500,000VND (MUST have + sign) → tránh match account number
+            Rule.amount("AMOUNT_PLUS", "[+]([0-9,]+)\\s*(?:VND|D|Đ)?", 1),
+            // 500,000 VND (without +, but 6+ digits with commas) → tránh match "09" trong account number
+            Rule.amount("AMOUNT_GROUPED", "([0-9]{1,3}(?:,[0-9]{3})+)\\s*(?:VND|D|Đ)", 1),
+            // 500K without + (lower priority)
+            Rule.amount("AMOUNT_K", "\\b([0-9]+)K", 1000),
+            // "GD 100" (for testing only)
+            Rule.amount("AMOUNT_TEST", "^GD\\s+([0-9]+)$", 1000),
+
+            // MBVCB.11586295199.373933 (MBBank) → MBVCB_11586295199_373933
+            Rule.reference("REF_MBVCB", "MBVCB\\.[0-9]+\\.[0-9]+", 0, ""),
+            // "Ma GD: 123456" (some banks)
+            Rule.reference("REF_MA_GD", "MA\\s+GD[:\\s]*([0-9A-Z]+)", 1, "GD"),
+            // "GD:" after ND: field (avoid "GD: +200,000VND")
+            Rule.reference("REF_GD_AFTER_ND", "ND:.*GD[:\\s]*([0-9A-Z]{5,})", 1, "GD"),
+            // GD anywhere, NOT followed by + or number with comma
+            Rule.reference("REF_GD", "^.*?GD[:\\s]+([0-9A-Z]{5,})(?![0-9,+])", 1, "GD"),
+
+            // NAP TIEN DEMOACCOUNT / NAPTIEN DEMOACCOUNT
+            Rule.of("USERNAME_NAP_TIEN", Field.USERNAME, "(?:NAP\\s*TIEN|NAPTIEN)\\s+([A-Z0-9]{3,30})"),
+            // ND: DEMOACCOUNT
+            Rule.of("USERNAME_ND", Field.USERNAME, "ND[:\\s]+([A-Z0-9]{3,30})"),
+            // Standalone alphanumeric code, at least 2 letters (fallback)
+            Rule.of("USERNAME_STANDALONE", Field.USERNAME, "\\b([A-Z]{2,}[A-Z0-9]{2,28})\\b"),
+
+            // USER123 / USER 123 (anywhere in message)
+            Rule.of("USER_ID_USER", Field.USER_ID, "USER\\s*([0-9]+)"),
+            // U123 (short form)
+            Rule.of("USER_ID_U", Field.USER_ID, "\\bU([0-9]+)\\b"),
+            // NAPTIEN 123
+            Rule.of("USER_ID_NAP_TIEN", Field.USER_ID, "NAP\\s*TIEN\\s+([0-9]+)"),
+
+            // demo@gmail.com (deprecated)
+            Rule.of("EMAIL", Field.EMAIL, "\\b([A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,})\\b")
+    );
+
+    private static final Set<String> BANK_RULES = Set.of(
+            "AMOUNT_PLUS_K", "AMOUNT_PLUS", "AMOUNT_GROUPED", "AMOUNT_K",
+            "REF_MA_GD", "REF_GD_AFTER_ND", "REF_GD",
+            "USERNAME_NAP_TIEN", "USERNAME_ND", "USERNAME_STANDALONE",
+            "USER_ID_USER", "USER_ID_U", "USER_ID_NAP_TIEN",
+            "EMAIL");
+
+    /** Sender lạ (SĐT, app test...) → thử mọi rule */
+    static final BankSmsGrammar DEFAULT_GRAMMAR = new BankSmsGrammar(DEFAULT_CODE, BUILT_IN_RULES);
+
+    /** MBBank: thêm mã MBVCB, không có test format */
+    static final BankSmsGrammar MBBANK_GRAMMAR = BankSmsGrammar.of("MBBANK", BUILT_IN_RULES,
+            union(BANK_RULES, Set.of("REF_MBVCB")));
+
+    /** Ngân hàng khác: không có mã MBVCB, không có test format */
+    static final BankSmsGrammar STANDARD_GRAMMAR = BankSmsGrammar.of("STANDARD", BUILT_IN_RULES, BANK_RULES);
+
+    private static final Map<String, String> BUILT_IN_SENDERS = new LinkedHashMap<>();
+
+    static {
+        for (String bank : List.of("VIETCOMBANK", "VCB", "TECHCOMBANK", "TCB", "BIDV", "AGRIBANK", "VIETINBANK",
+                "SACOMBANK", "ACB", "VPBANK", "TPBANK", "HDBANK", "SHBBANK", "SHB")) {
+            BUILT_IN_SENDERS.put(bank, STANDARD_GRAMMAR.getName());
+        }
+        BUILT_IN_SENDERS.put("MBBANK", MBBANK_GRAMMAR.getName());
+        BUILT_IN_SENDERS.put("MB", MBBANK_GRAMMAR.getName());
+    }
+
+    private final BankSmsGrammarRuleRepository ruleRepository;
+    private final BankSmsSenderRepository senderRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicReference<Registry> registry;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public BankSmsGrammarRegistry(BankSmsGrammarRuleRepository ruleRepository,
+                                  BankSmsSenderRepository senderRepository,
+                                  StringRedisTemplate redisTemplate,
+                                  RedisMessageListenerContainer listenerContainer,
+                                  MeterRegistry meterRegistry) {
+        this.ruleRepository = ruleRepository;
+        this.senderRepository = senderRepository;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+        this.registry = new AtomicReference<>(build(builtInGrammars(), new HashMap<>(BUILT_IN_SENDERS)));
+    }
+
+    @PostConstruct
+    public void initialize() {
+        reload();
+        listenerContainer.addMessageListener((message, pattern) -> {
+            if (!nodeId.equals(new String(message.getBody(), StandardCharsets.UTF_8))) {
+                reload();
+            }
+        }, new ChannelTopic(CHANGED_CHANNEL));
+    }
+
+    /**
+     * Chọn grammar theo sender (null/không nhận ra → DEFAULT)
+     */
+    public CountedGrammar grammarFor(String sender) {
+        return registry.get().grammarFor(sender);
+    }
+
+    /**
+     * Sender có thuộc ngân hàng đã biết không (có grammar riêng, không phải DEFAULT)
+     */
+    public boolean isKnownSender(String sender) {
+        return !DEFAULT_CODE.equals(grammarFor(sender).grammar().getName());
+    }
+
+    /**
+     * Reload grammar từ config table (định kỳ, safety net khi miss Redis message)
+     */
+    @Scheduled(fixedDelayString = "${bank-sms.grammar.reload-interval:PT1M}",
+            initialDelayString = "${bank-sms.grammar.reload-interval:PT1M}")
+    public void reload() {
+        Registry current = registry.get();
+        Map<String, BankSmsGrammar> grammars = builtInGrammars();
+        Map<String, String> senders = new HashMap<>(BUILT_IN_SENDERS);
+
+        try {
+            Map<String, List<Rule>> rulesByBank = new LinkedHashMap<>();
+            for (BankSmsGrammarRule row : ruleRepository.findByEnabledTrueOrderByBankCodeAscPriorityAscIdAsc()) {
+                rulesByBank.computeIfAbsent(row.getBankCode().toUpperCase(), code -> new ArrayList<>()).add(row.toRule());
+            }
+            rulesByBank.forEach((code, rules) -> {
+                try {
+                    grammars.put(code, new BankSmsGrammar(code, rules));
+                } catch (RuntimeException e) {
+                    // Regex lỗi → giữ grammar đang chạy (hoặc built-in)
+                    log.error("Invalid SMS grammar {} in config table, keeping current one: {}", code, e.getMessage());
+                    CountedGrammar running = current.grammars().get(code);
+                    if (running != null) {
+                        grammars.put(code, running.grammar());
+                    }
+                }
+            });
+
+            for (BankSmsSender sender : senderRepository.findAll()) {
+                senders.put(sender.getAlias().toUpperCase(), sender.getBankCode().toUpperCase());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot load SMS grammars from database, keeping current registry: {}", e.getMessage());
+            return;
+        }
+
+        registry.set(build(grammars, senders));
+        log.debug("Loaded {} SMS grammars, {} sender aliases", grammars.size(), senders.size());
+    }
+
+    /**
+     * Reload trên node hiện tại và báo các node khác (sau khi admin sửa config table)
+     */
+    public void reloadAll() {
+        reload();
+        try {
+            redisTemplate.convertAndSend(CHANGED_CHANNEL, nodeId);
+        } catch (Exception e) {
+            log.warn("Redis not available for SMS grammar reload broadcast: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tóm tắt registry cho admin: grammar → rule names, alias → grammar
+     */
+    public Map<String, Object> describe() {
+        Registry current = registry.get();
+        Map<String, List<String>> grammars = new LinkedHashMap<>();
+        current.grammars().forEach((code, counted) ->
+                grammars.put(code, counted.grammar().getRules().stream().map(Rule::name).toList()));
+        Map<String, String> senders = new LinkedHashMap<>();
+        current.senderAliases().forEach(alias -> senders.put(alias, current.senders().get(alias).grammar().getName()));
+        return Map.of(
+                "grammars", grammars,
+                "senders", senders,
+                "loadedAt", current.loadedAt()
+        );
+    }
+
+    private Registry build(Map<String, BankSmsGrammar> grammars, Map<String, String> aliases) {
+        Map<String, CountedGrammar> counted = new LinkedHashMap<>();
+        grammars.forEach((code, grammar) -> counted.put(code, new CountedGrammar(grammar, meterRegistry)));
+
+        Map<String, CountedGrammar> senders = new HashMap<>();
+        aliases.forEach((alias, code) -> {
+            CountedGrammar grammar = counted.get(code);
+            if (grammar == null) {
+                log.warn("Sender alias {} points to unknown SMS grammar {}, ignored", alias, code);
+            } else {
+                senders.put(alias, grammar);
+            }
+        });
+        // Alias dài thử trước: "VIETCOMBANK", "SACOMBANK" cũng chứa "MB"
+        List<String> senderAliases = senders.keySet().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed().thenComparing(Comparator.naturalOrder()))
+                .toList();
+        return new Registry(counted, senders, senderAliases, counted.get(DEFAULT_CODE), LocalDateTime.now());
+    }
+
+    private static Map<String, BankSmsGrammar> builtInGrammars() {
+        Map<String, BankSmsGrammar> grammars = new LinkedHashMap<>();
+        grammars.put(DEFAULT_CODE, DEFAULT_GRAMMAR);
+        grammars.put(MBBANK_GRAMMAR.getName(), MBBANK_GRAMMAR);
+        grammars.put(STANDARD_GRAMMAR.getName(), STANDARD_GRAMMAR);
+        return grammars;
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        Set<String> all = new HashSet<>(a);
+        all.addAll(b);
+        return all;
+    }
+
+    /**
+     * Snapshot immutable của registry
+     */
+    private record Registry(Map<String, CountedGrammar> grammars,
+                            Map<String, CountedGrammar> senders,
+                            List<String> senderAliases,
+                            CountedGrammar defaultGrammar,
+                            LocalDateTime loadedAt) {
+
+        CountedGrammar grammarFor(String sender) {
+            if (sender == null) {
+                return defaultGrammar;
+            }
+            String senderUpper = sender.toUpperCase();
+            CountedGrammar exact = senders.get(senderUpper);
+            if (exact != null) {
+                return exact;
+            }
+            for (String alias : senderAliases) {
+                if (senderUpper.contains(alias)) {
+                    return senders.get(alias);
+                }
+            }
+            return defaultGrammar;
+        }
+    }
+
+    /**
+     * Grammar kèm counter match/miss của từng rule (counter tạo sẵn khi build registry)
+     */
+    public static final class CountedGrammar {
+
+        private final BankSmsGrammar grammar;
+        private final Counter[] matches;
+        private final Counter[] misses;
+        private final BankSmsGrammar.RuleListener listener;
+
+        CountedGrammar(BankSmsGrammar grammar, MeterRegistry meterRegistry) {
+            this.grammar = grammar;
+            List<Rule> rules = grammar.getRules();
+            this.matches = new Counter[rules.size()];
+            this.misses = new Counter[rules.size()];
+            for (int i = 0; i < rules.size(); i++) {
+                matches[i] = counter(meterRegistry, grammar.getName(), rules.get(i).name(), "match");
+                misses[i] = counter(meterRegistry, grammar.getName(), rules.get(i).name(), "miss");
+            }
+            this.listener = (ruleIndex, matched) -> (matched ? matches : misses)[ruleIndex].increment();
+        }
+
+        private static Counter counter(MeterRegistry meterRegistry, String grammar, String rule, String result) {
+            return Counter.builder("bank.sms.grammar.rule")
+                    .tag("grammar", grammar)
+                    .tag("rule", rule)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+
+        public BankSmsGrammar grammar() {
+            return grammar;
+        }
+
+        public BankSmsGrammar.Result parse(String message) {
+            return grammar.parse(message, listener);
+        }
+    }
+}
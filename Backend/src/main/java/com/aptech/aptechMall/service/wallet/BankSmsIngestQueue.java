@@ -0,0 +1,131 @@
+package com.aptech.aptechMall.service.wallet;
+
+import com.aptech.aptechMall.entity.BankSms;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hàng đợi xử lý SMS webhook bất đồng bộ (bank-sms.ingest.async=true)
+ *
+ * Tại sao cần:
+ * - Webhook trước đây parse SMS + tìm user + cộng ví ngay trong HTTP request
+ *   → latency của SMS Forwarder phụ thuộc toàn bộ quá trình xử lý
+ * - Async: webhook chỉ lưu SMS (durable, đã claim) rồi trả về ngay, worker pool xử lý sau
+ *
+ * Backpressure:
+ * - Queue bounded (bank-sms.ingest.queue-capacity) + worker pool cố định (bank-sms.ingest.workers)
+ * - Queue đầy → KHÔNG block request: bỏ claim của SMS → BankSmsScheduler xử lý theo batch
+ *   (SMS đã nằm trong DB, bảng bank_sms chính là hàng đợi tràn)
+ * - Shutdown: SMS còn trong queue giữ claim → được claim lại sau khi lease hết hạn
+ *
+ * METRICS:
+ * - bank.sms.ingest.queue.depth   Số SMS đang chờ trong queue
+ * - bank.sms.ingest.lag           Thời gian từ lúc nhận SMS đến lúc worker bắt đầu xử lý
+ * - bank.sms.ingest.processed{result=success|failed|rejected}  Throughput
+ */
+@Slf4j
+@Component
+public class BankSmsIngestQueue {
+
+    private final BankTransferService bankTransferService;
+    private final boolean async;
+    private final ThreadPoolExecutor executor;
+    private final Timer lagTimer;
+    private final Counter successCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+
+    public BankSmsIngestQueue(BankTransferService bankTransferService,
+                              MeterRegistry meterRegistry,
+                              @Value("${bank-sms.ingest.async:false}") boolean async,
+                              @Value("${bank-sms.ingest.workers:4}") int workers,
+                              @Value("${bank-sms.ingest.queue-capacity:1000}") int queueCapacity) {
+        this.bankTransferService = bankTransferService;
+        this.async = async;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("bank.sms.ingest.queue.depth", executor, e -> e.getQueue().size())
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("bank.sms.ingest.lag").register(meterRegistry);
+        this.successCounter = meterRegistry.counter("bank.sms.ingest.processed", "result", "success");
+        this.failedCounter = meterRegistry.counter("bank.sms.ingest.processed", "result", "failed");
+        this.rejectedCounter = meterRegistry.counter("bank.sms.ingest.processed", "result", "rejected");
+    }
+
+    /**
+     * @return true nếu webhook nên ack ngay và xử lý qua queue
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Đưa SMS (đã lưu bởi saveSms, đang giữ claim) vào queue
+     *
+     * @param sms SMS vừa lưu
+     * @return false nếu queue đầy (SMS sẽ được xử lý theo batch)
+     */
+    public boolean submit(BankSms sms) {
+        Long smsId = sms.getId();
+        String claimToken = sms.getClaimToken();
+        LocalDateTime receivedAt = sms.getReceivedAt();
+        try {
+            executor.execute(() -> process(smsId, claimToken, receivedAt));
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            log.warn("SMS ingest queue full, SMS id={} left for batch processing", smsId);
+            bankTransferService.releaseClaim(smsId);
+            return false;
+        }
+    }
+
+    private void process(Long smsId, String claimToken, LocalDateTime receivedAt) {
+        if (receivedAt != null) {
+            lagTimer.record(Duration.between(receivedAt, LocalDateTime.now()));
+        }
+        if (bankTransferService.processClaimed(smsId, claimToken)) {
+            successCounter.increment();
+        } else {
+            failedCounter.increment();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            int pending = executor.shutdownNow().size();
+            log.warn("SMS ingest queue stopped with {} SMS pending (re-claimed after lease expiry)", pending);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "sms-ingest-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
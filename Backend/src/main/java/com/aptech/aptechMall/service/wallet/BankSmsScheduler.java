@@ -0,0 +1,25 @@
+package com.aptech.aptechMall.service.wallet;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BankSmsScheduler {
+
+    private final BankTransferService bankTransferService;
+
+    // Drain SMS left unprocessed (webhook crashed mid-way, claim lease expired); every node claims its own batches
+    @Scheduled(fixedDelayString = "${bank-sms.batch.poll-interval:PT30S}",
+            initialDelayString = "${bank-sms.batch.poll-interval:PT30S}")
+    public void processPendingSms() {
+        try {
+            bankTransferService.processUnprocessedSms();
+        } catch (Exception e) {
+            log.warn("Pending SMS batch failed: {}", e.getMessage());
+        }
+    }
+}
@@ -2,22 +2,45 @@ package com.aptech.aptechMall.service.wallet;
 
 import com.aptech.aptechMall.entity.BankSms;
 import com.aptech.aptechMall.entity.PaymentGateway;
-import com.aptech.aptechMall.model.jpa.User;
 import com.aptech.aptechMall.repository.BankSmsRepository;
-import com.aptech.aptechMall.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Service for processing bank transfer SMS notifications
  * Handles automatic deposit creation from bank SMS
+ *
+ * Batch processing (processUnprocessedSms):
+ * - Claim: short transaction, SELECT ... FOR UPDATE SKIP LOCKED oldest first (FIFO),
+ *   set claim_token + claimed_until (lease) → commit
+ * - Resolve users: identifiers of the whole batch looked up with one IN-query per type (DepositUserResolver)
+ * - Process: each claimed SMS in its own transaction → one failure does not roll back the others
+ *
+ * Duplicate prevention (transaction_reference has a unique index):
+ * - Before the deposit, the reference is written to the SMS row in its own short transaction
+ *   → of two workers processing the same bank transaction, only one write succeeds
+ * - Node-local cache of recent references rejects obvious replays (forwarder retries) without a DB round trip
+ * - Workers/nodes claim disjoint batches in parallel; a crashed worker's SMS is re-claimed after the lease
+ * - Webhook SMS are saved already claimed, so batch workers do not pick them up while the request processes them
  */
 @Service
 @RequiredArgsConstructor
@@ -27,7 +50,31 @@ public class BankTransferService {
     private final BankSmsRepository smsRepository;
     private final BankSmsParserService parserService;
     private final WalletService walletService;
-    private final UserRepository userRepository;
+    private final DepositUserResolver userResolver;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${bank-sms.batch.size:50}")
+    private int batchSize;
+
+    @Value("${bank-sms.batch.claim-timeout:PT5M}")
+    private Duration claimTimeout;
+
+    @Value("${bank-sms.reference-cache.ttl:1h}")
+    private Duration referenceCacheTtl;
+
+    @Value("${bank-sms.reference-cache.max-size:10000}")
+    private long referenceCacheSize;
+
+    /** Recent transaction reference → ID of the SMS that owns it */
+    private Cache<String, Long> recentReferences;
+
+    @PostConstruct
+    public void initReferenceCache() {
+        recentReferences = Caffeine.newBuilder()
+                .maximumSize(referenceCacheSize)
+                .expireAfterWrite(referenceCacheTtl)
+                .build();
+    }
 
     /**
      * Save incoming SMS to database
@@ -46,6 +93,8 @@ public class BankTransferService {
                 .processed(false)
                 .depositCreated(false)
                 .build();
+        // Processed right away by the caller - keep batch workers off it
+        sms.claim(UUID.randomUUID().toString(), LocalDateTime.now().plus(claimTimeout));
 
         BankSms savedSms = smsRepository.save(sms);
         log.info("Saved SMS from {}: id={}", sender, savedSms.getId());
@@ -54,30 +103,33 @@ public class BankTransferService {
     }
 
     /**
-     * Process unprocessed SMS and create deposits
+     * Claim a batch of unprocessed SMS (oldest first) and create deposits
+     * Safe to call concurrently from several workers/nodes
      * @return Number of SMS processed
      */
-    @Transactional
     public int processUnprocessedSms() {
-        List<BankSms> unprocessedSms = smsRepository.findTop10ByProcessedFalseOrderByReceivedAtDesc();
+        String claimToken = UUID.randomUUID().toString();
+        List<BankSms> claimed = claimBatch(claimToken);
 
-        if (unprocessedSms.isEmpty()) {
+        if (claimed.isEmpty()) {
             log.debug("No unprocessed SMS found");
             return 0;
         }
 
-        log.info("Found {} unprocessed SMS to process", unprocessedSms.size());
-        int processedCount = 0;
+        log.info("Claimed {} unprocessed SMS to process", claimed.size());
 
-        for (BankSms sms : unprocessedSms) {
-            try {
-                processSingleSms(sms);
+        // Parse each SMS once (detached copies): results are reused when processing, identifiers
+        // of the whole batch are resolved at once
+        Map<Long, ParsedSms> parsed = new HashMap<>();
+        for (BankSms sms : claimed) {
+            parsed.put(sms.getId(), ParsedSms.of(sms, parserService.parseSms(sms)));
+        }
+        Map<String, Long> prefetchedUsers = userResolver.prefetch(claimed);
+
+        int processedCount = 0;
+        for (BankSms sms : claimed) {
+            if (processClaimed(sms.getId(), claimToken, prefetchedUsers, parsed.get(sms.getId()))) {
                 processedCount++;
-            } catch (Exception e) {
-                log.error("Error processing SMS id={}: {}", sms.getId(), e.getMessage(), e);
-                sms.setError("Processing error: " + e.getMessage());
-                sms.markAsProcessed();
-                smsRepository.save(sms);
             }
         }
 
@@ -85,12 +137,94 @@ public class BankTransferService {
         return processedCount;
     }
 
+    /**
+     * Lock and claim up to batchSize SMS, commit immediately to release the row locks
+     */
+    private List<BankSms> claimBatch(String claimToken) {
+        return newTransaction().execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<BankSms> batch = smsRepository.lockClaimableSms(now, batchSize);
+            batch.forEach(sms -> sms.claim(claimToken, now.plus(claimTimeout)));
+            return batch;
+        });
+    }
+
+    /**
+     * Process one claimed SMS in its own transaction, failures are recorded on the SMS
+     * @param smsId SMS ID
+     * @param claimToken Token the SMS was claimed with (saveSms or batch claim)
+     * @return true if processed without error, false if failed or the claim was lost
+     */
+    public boolean processClaimed(Long smsId, String claimToken) {
+        return processClaimed(smsId, claimToken, Map.of(), null);
+    }
+
+    private boolean processClaimed(Long smsId, String claimToken, Map<String, Long> prefetchedUsers,
+                                   ParsedSms parsed) {
+        try {
+            return processClaimedSms(smsId, claimToken, prefetchedUsers, parsed);
+        } catch (Exception e) {
+            // Transaction of this SMS rolled back - record the error in a fresh one
+            log.error("Error processing SMS id={}: {}", smsId, e.getMessage(), e);
+            markFailed(smsId, "Processing error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Give up an inline claim so batch workers pick the SMS up on their next run
+     */
+    public void releaseClaim(Long smsId) {
+        newTransaction().executeWithoutResult(status -> smsRepository.findById(smsId).ifPresent(sms -> {
+            if (!sms.isProcessed()) {
+                sms.claim(null, null);
+            }
+        }));
+    }
+
+    /**
+     * @return false if the claim was lost (lease expired and another worker took the SMS)
+     */
+    private boolean processClaimedSms(Long smsId, String claimToken, Map<String, Long> prefetchedUsers,
+                                      ParsedSms parsed) {
+        return Boolean.TRUE.equals(newTransaction().execute(status -> {
+            BankSms sms = smsRepository.findById(smsId).orElse(null);
+            if (sms == null || !claimToken.equals(sms.getClaimToken())) {
+                log.warn("Lost claim on SMS id={}, skipping", smsId);
+                return false;
+            }
+            processSingleSms(sms, prefetchedUsers, parsed);
+            return true;
+        }));
+    }
+
+    private void markFailed(Long smsId, String error) {
+        newTransaction().executeWithoutResult(status -> smsRepository.findById(smsId).ifPresent(sms -> {
+            sms.setError(error);
+            sms.markAsProcessed();
+            smsRepository.save(sms);
+        }));
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+
     /**
      * Process a single SMS message
      * @param sms BankSms to process
      */
     @Transactional
     public void processSingleSms(BankSms sms) {
+        processSingleSms(sms, Map.of(), null);
+    }
+
+    /**
+     * @param parsed Parse result from the batch step (null = parse here)
+     */
+    private void processSingleSms(BankSms sms, Map<String, Long> prefetchedUsers, ParsedSms parsed) {
         log.info("Processing SMS id={}", sms.getId());
 
         // Check if already processed
@@ -99,8 +233,15 @@ public class BankTransferService {
             return;
         }
 
-        // Parse SMS to extract transaction info
-        boolean parseSuccess = parserService.parseSms(sms);
+        // Parse SMS to extract transaction info (batch: reuse the result, parsing again would
+        // double the grammar rule metrics and logs)
+        boolean parseSuccess;
+        if (parsed != null) {
+            parsed.applyTo(sms);
+            parseSuccess = parsed.success();
+        } else {
+            parseSuccess = parserService.parseSms(sms);
+        }
         if (!parseSuccess) {
             log.error("Failed to parse SMS id={}: {}", sms.getId(), sms.getErrorMessage());
             sms.markAsProcessed();
@@ -116,23 +257,19 @@ public class BankTransferService {
             return;
         }
 
-        // Check if transaction reference already exists (excluding current SMS)
-        if (sms.getTransactionReference() != null) {
-            Optional<BankSms> existingSms = smsRepository.findByTransactionReference(sms.getTransactionReference());
-            if (existingSms.isPresent() && !existingSms.get().getId().equals(sms.getId())) {
-                log.warn("Duplicate transaction reference: {} (found in SMS id={})",
-                        sms.getTransactionReference(), existingSms.get().getId());
-                sms.setError("Duplicate transaction reference");
-                sms.markAsProcessed();
-                smsRepository.save(sms);
-                return;
-            }
+        // Claim the transaction reference (unique index) - fails if another SMS already has it
+        if (sms.getTransactionReference() != null && !reserveReference(sms)) {
+            sms.setError("Duplicate transaction reference: " + sms.getTransactionReference());
+            sms.setTransactionReference(null);
+            sms.markAsProcessed();
+            smsRepository.save(sms);
+            return;
         }
 
         // Create deposit if username, userId, or email is found
         if (sms.getExtractedUsername() != null || sms.getExtractedUserId() != null || sms.getExtractedEmail() != null) {
             try {
-                createDepositFromSms(sms);
+                createDepositFromSms(sms, prefetchedUsers);
             } catch (Exception e) {
                 log.error("Failed to create deposit from SMS id={}: {}", sms.getId(), e.getMessage(), e);
                 sms.setError("Deposit creation failed: " + e.getMessage());
@@ -147,67 +284,54 @@ public class BankTransferService {
         smsRepository.save(sms);
     }
 
+    /**
+     * Write the SMS's transaction reference in its own transaction (insert-or-detect)
+     * A constraint violation would mark the caller's transaction rollback-only, hence REQUIRES_NEW
+     * @return false if another SMS already owns the reference
+     */
+    private boolean reserveReference(BankSms sms) {
+        String reference = sms.getTransactionReference();
+        Long owner = recentReferences.getIfPresent(reference);
+        if (owner != null && !owner.equals(sms.getId())) {
+            log.warn("Duplicate transaction reference: {} (found in SMS id={}, cached)", reference, owner);
+            return false;
+        }
+
+        try {
+            newTransaction().executeWithoutResult(status ->
+                    smsRepository.reserveTransactionReference(sms.getId(), reference));
+        } catch (DataIntegrityViolationException e) {
+            Optional<BankSms> existingSms = smsRepository.findByTransactionReference(reference);
+            existingSms.ifPresent(existing -> recentReferences.put(reference, existing.getId()));
+            log.warn("Duplicate transaction reference: {} (found in SMS id={})",
+                    reference, existingSms.map(BankSms::getId).orElse(null));
+            return false;
+        }
+        recentReferences.put(reference, sms.getId());
+        return true;
+    }
+
     /**
      * Create wallet deposit from parsed SMS
      * Tries multiple methods: Username -> UserId -> Email (with fallback)
      * @param sms Parsed BankSms
+     * @param prefetchedUsers Users resolved for the whole batch (empty when processed alone)
      */
-    private void createDepositFromSms(BankSms sms) {
+    private void createDepositFromSms(BankSms sms, Map<String, Long> prefetchedUsers) {
         BigDecimal amount = sms.getParsedAmount();
         String reference = sms.getTransactionReference();
 
         // Find user by trying username, userId, or email (with fallback)
-        User user = null;
-        String identifier = null;
-
-        // Priority 1: Try Username (no special chars)
-        if (sms.getExtractedUsername() != null) {
-            identifier = sms.getExtractedUsername();
-            Optional<User> userOpt = userRepository.findByUsername(sms.getExtractedUsername());
-            if (userOpt.isPresent()) {
-                user = userOpt.get();
-                log.info("✅ Found user by username: {} -> userId={}", sms.getExtractedUsername(), user.getUserId());
-            } else {
-                log.warn("⚠️ Username '{}' not found, will try userId fallback", sms.getExtractedUsername());
-            }
-        }
-
-        // Priority 2: Try UserId (if username not found or not provided)
-        if (user == null && sms.getExtractedUserId() != null) {
-            identifier = "USER" + sms.getExtractedUserId();
-            Optional<User> userOpt = userRepository.findById(sms.getExtractedUserId());
-            if (userOpt.isPresent()) {
-                user = userOpt.get();
-                log.info("✅ Found user by ID: {} -> username={}", sms.getExtractedUserId(), user.getUsername());
-            } else {
-                log.warn("⚠️ UserId {} not found, will try email fallback", sms.getExtractedUserId());
-            }
-        }
-
-        // Priority 3: Try Email (deprecated - has special chars)
-        if (user == null && sms.getExtractedEmail() != null) {
-            identifier = sms.getExtractedEmail();
-            Optional<User> userOpt = userRepository.findByEmail(sms.getExtractedEmail());
-            if (userOpt.isPresent()) {
-                user = userOpt.get();
-                log.warn("✅ Found user by email (deprecated): {} -> userId={}", sms.getExtractedEmail(), user.getUserId());
-            } else {
-                log.error("❌ Email '{}' not found", sms.getExtractedEmail());
-            }
-        }
-
-        // If no user found after all attempts, throw error
-        if (user == null) {
-            String errorMsg = String.format(
-                "User not found. Tried: username=%s, userId=%s, email=%s",
-                sms.getExtractedUsername(),
-                sms.getExtractedUserId(),
-                sms.getExtractedEmail()
-            );
-            throw new RuntimeException(errorMsg);
-        }
-
-        Long userId = user.getUserId();
+        DepositUserResolver.ResolvedUser user = userResolver.resolve(sms, prefetchedUsers)
+                .orElseThrow(() -> new RuntimeException(String.format(
+                        "User not found. Tried: username=%s, userId=%s, email=%s",
+                        sms.getExtractedUsername(),
+                        sms.getExtractedUserId(),
+                        sms.getExtractedEmail()
+                )));
+
+        Long userId = user.userId();
+        String identifier = user.identifier();
         log.info("Creating deposit for user {} ({}): amount={}, ref={}", userId, identifier, amount, reference);
 
         // Call WalletService to process deposit
@@ -254,4 +378,26 @@ public class BankTransferService {
     public List<BankSms> getSmsWithErrors() {
         return smsRepository.findByErrorMessageIsNotNullOrderByCreatedAtDesc();
     }
+
+    /**
+     * Fields set by BankSmsParserService.parseSms, copied from the batch's detached SMS to the managed one
+     */
+    private record ParsedSms(boolean success, BigDecimal amount, String reference, String username,
+                             Long userId, String email, String error) {
+
+        static ParsedSms of(BankSms sms, boolean success) {
+            return new ParsedSms(success, sms.getParsedAmount(), sms.getTransactionReference(),
+                    sms.getExtractedUsername(), sms.getExtractedUserId(), sms.getExtractedEmail(),
+                    sms.getErrorMessage());
+        }
+
+        void applyTo(BankSms sms) {
+            sms.setParsedAmount(amount);
+            sms.setTransactionReference(reference);
+            sms.setExtractedUsername(username);
+            sms.setExtractedUserId(userId);
+            sms.setExtractedEmail(email);
+            sms.setError(error);
+        }
+    }
 }
@@ -0,0 +1,227 @@
+package com.aptech.aptechMall.service.wallet;
+
+import com.aptech.aptechMall.entity.BankSms;
+import com.aptech.aptechMall.model.jpa.User;
+import com.aptech.aptechMall.repository.UserRepository;
+import com.aptech.aptechMall.repository.UserRepository.UserIdentity;
+import com.aptech.aptechMall.service.authentication.PrincipalCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Tìm user nhận tiền từ identifier trong SMS (username/deposit code → USER{id} → email)
+ *
+ * Tại sao cần:
+ * - Trước đây mỗi SMS tìm user bằng tối đa 3 query (findByUsername → findById → findByEmail)
+ * - Batch: {@link #prefetch(Collection)} gom identifier của cả batch → 1 IN-query cho mỗi loại identifier
+ * - Cache identifier → userId cho user nạp tiền nhiều lần → thường không cần query
+ *
+ * Cache invalidation:
+ * - Username/email/status thay đổi → PrincipalCache publish userId lên "auth:principal-changed"
+ *   → mọi node (kể cả node hiện tại) xóa identifier của user đó
+ * - TTL (bank-sms.user-cache.ttl, default 10m) giới hạn dữ liệu cũ khi Redis down
+ * - Chỉ cache kết quả tìm thấy: user mới đăng ký nạp tiền ngay vẫn được tìm thấy
+ */
+@Slf4j
+@Component
+public class DepositUserResolver {
+
+    /** Đánh dấu identifier đã query trong batch nhưng không có user */
+    private static final Long NOT_FOUND = -1L;
+
+    private final UserRepository userRepository;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Cache<String, Long> userIds;
+
+    public DepositUserResolver(UserRepository userRepository,
+                               RedisMessageListenerContainer listenerContainer,
+                               @Value("${bank-sms.user-cache.ttl:10m}") Duration ttl,
+                               @Value("${bank-sms.user-cache.max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.listenerContainer = listenerContainer;
+        this.userIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 2);
+            if (parts.length == 2) {
+                evict(Long.valueOf(parts[1]));
+            }
+        }, new ChannelTopic(PrincipalCache.CHANGED_CHANNEL));
+    }
+
+    /**
+     * User tìm được và identifier đã dùng
+     */
+    public record ResolvedUser(Long userId, String identifier) {
+    }
+
+    /**
+     * Tìm trước user cho cả batch SMS đã parse
+     *
+     * @param parsedSms SMS đã parse (extractedUsername/UserId/Email)
+     * @return identifier key → userId (NOT_FOUND nếu đã query mà không có), dùng cho {@link #resolve(BankSms, Map)}
+     */
+    public Map<String, Long> prefetch(Collection<BankSms> parsedSms) {
+        Set<String> usernames = new HashSet<>();
+        Set<Long> ids = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (BankSms sms : parsedSms) {
+            if (sms.getExtractedUsername() != null && cached(usernameKey(sms.getExtractedUsername())) == null) {
+                usernames.add(sms.getExtractedUsername());
+            }
+            if (sms.getExtractedUserId() != null && cached(idKey(sms.getExtractedUserId())) == null) {
+                ids.add(sms.getExtractedUserId());
+            }
+            if (sms.getExtractedEmail() != null && cached(emailKey(sms.getExtractedEmail())) == null) {
+                emails.add(sms.getExtractedEmail());
+            }
+        }
+
+        Map<String, Long> found = new HashMap<>();
+        if (!usernames.isEmpty()) {
+            usernames.forEach(name -> found.put(usernameKey(name), NOT_FOUND));
+            for (UserIdentity user : userRepository.findIdentitiesByUsernameOrEmailIn(usernames)) {
+                // findByUsername khớp username HOẶC email
+                if (user.getUsername() != null) {
+                    putIfRequested(found, usernameKey(user.getUsername()), user.getUserId());
+                }
+                if (user.getEmail() != null) {
+                    putIfRequested(found, usernameKey(user.getEmail()), user.getUserId());
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            ids.forEach(id -> found.put(idKey(id), NOT_FOUND));
+            for (UserIdentity user : userRepository.findIdentitiesByUserIdIn(ids)) {
+                found.put(idKey(user.getUserId()), user.getUserId());
+            }
+        }
+        if (!emails.isEmpty()) {
+            emails.forEach(email -> found.put(emailKey(email), NOT_FOUND));
+            for (UserIdentity user : userRepository.findIdentitiesByEmailIn(emails)) {
+                putIfRequested(found, emailKey(user.getEmail()), user.getUserId());
+            }
+        }
+
+        found.forEach((key, userId) -> {
+            if (!NOT_FOUND.equals(userId)) {
+                userIds.put(key, userId);
+            }
+        });
+        log.debug("Prefetched users for {} SMS: {} usernames, {} ids, {} emails",
+                parsedSms.size(), usernames.size(), ids.size(), emails.size());
+        return found;
+    }
+
+    /**
+     * Tìm user theo thứ tự ưu tiên: Username → UserId → Email
+     *
+     * @param sms SMS đã parse
+     * @param prefetched Kết quả {@link #prefetch(Collection)} (Map rỗng nếu xử lý lẻ)
+     * @return User tìm được, empty nếu không identifier nào khớp
+     */
+    public Optional<ResolvedUser> resolve(BankSms sms, Map<String, Long> prefetched) {
+        // Priority 1: Username (no special chars)
+        if (sms.getExtractedUsername() != null) {
+            String username = sms.getExtractedUsername();
+            Long userId = lookup(usernameKey(username), prefetched,
+                    () -> userRepository.findByUsername(username).map(User::getUserId));
+            if (userId != null) {
+                log.info("✅ Found user by username: {} -> userId={}", username, userId);
+                return Optional.of(new ResolvedUser(userId, username));
+            }
+            log.warn("⚠️ Username '{}' not found, will try userId fallback", username);
+        }
+
+        // Priority 2: UserId
+        if (sms.getExtractedUserId() != null) {
+            Long id = sms.getExtractedUserId();
+            Long userId = lookup(idKey(id), prefetched,
+                    () -> userRepository.existsById(id) ? Optional.of(id) : Optional.empty());
+            if (userId != null) {
+                log.info("✅ Found user by ID: {}", userId);
+                return Optional.of(new ResolvedUser(userId, "USER" + userId));
+            }
+            log.warn("⚠️ UserId {} not found, will try email fallback", id);
+        }
+
+        // Priority 3: Email (deprecated - has special chars)
+        if (sms.getExtractedEmail() != null) {
+            String email = sms.getExtractedEmail();
+            Long userId = lookup(emailKey(email), prefetched,
+                    () -> userRepository.findByEmail(email).map(User::getUserId));
+            if (userId != null) {
+                log.warn("✅ Found user by email (deprecated): {} -> userId={}", email, userId);
+                return Optional.of(new ResolvedUser(userId, email));
+            }
+            log.error("❌ Email '{}' not found", email);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Xóa mọi identifier trỏ tới user (username/email/status đã đổi)
+     */
+    public void evict(Long userId) {
+        userIds.asMap().values().removeIf(userId::equals);
+    }
+
+    private Long lookup(String key, Map<String, Long> prefetched, Supplier<Optional<Long>> query) {
+        Long userId = prefetched.get(key);
+        if (userId == null) {
+            userId = cached(key);
+        }
+        if (userId == null) {
+            userId = query.get().orElse(NOT_FOUND);
+            if (!NOT_FOUND.equals(userId)) {
+                userIds.put(key, userId);
+            }
+        }
+        return NOT_FOUND.equals(userId) ? null : userId;
+    }
+
+    private Long cached(String key) {
+        return userIds.getIfPresent(key);
+    }
+
+    private static void putIfRequested(Map<String, Long> found, String key, Long userId) {
+        found.computeIfPresent(key, (k, current) -> NOT_FOUND.equals(current) ? userId : current);
+    }
+
+    // MySQL so sánh không phân biệt hoa thường → key cũng vậy
+    private static String usernameKey(String username) {
+        return "U:" + username.toUpperCase(Locale.ROOT);
+    }
+
+    private static String idKey(Long userId) {
+        return "I:" + userId;
+    }
+
+    private static String emailKey(String email) {
+        return "E:" + email.toLowerCase(Locale.ROOT);
+    }
+}
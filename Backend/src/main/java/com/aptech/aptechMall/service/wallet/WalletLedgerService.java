@@ -0,0 +1,115 @@
+package com.aptech.aptechMall.service.wallet;
+
+import com.aptech.aptechMall.entity.UserWallet;
+import com.aptech.aptechMall.entity.WalletTransaction;
+import com.aptech.aptechMall.repository.UserWalletRepository;
+import com.aptech.aptechMall.repository.WalletTransactionRepository;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+
+/**
+ * Sổ cái ví (ledger): điểm DUY NHẤT thay đổi số dư ví
+ *
+ * Tại sao cần:
+ * - Trước đây checkout/payRemaining/cancel/deposit đều đọc balance → tính balanceAfter trong Java → save()
+ * - Deposit + checkout chạy đồng thời → lost update (1 trong 2 thay đổi bị ghi đè)
+ *
+ * Cách làm:
+ * - Số dư được cập nhật bằng 1 câu UPDATE có điều kiện:
+ *   credit: balance = balance + :amt WHERE is_locked = false
+ *   debit:  balance = balance - :amt WHERE is_locked = false AND balance >= :amt
+ * - UPDATE giữ row lock tới khi commit → đọc lại balance ngay sau đó cho balanceAfter chính xác,
+ *   balanceBefore = balanceAfter ∓ amount → các WalletTransaction nối tiếp nhau không hở
+ * - WalletTransaction chỉ được thêm (append-only), tổng thay đổi của ledger phải bằng balance
+ *   ({@link #verify(UserWallet)}, tính từ WalletBalanceSnapshot gần nhất)
+ *
+ * Caller phải đang ở trong transaction: UPDATE số dư và bản ghi ledger commit/rollback cùng nhau.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(Transactional.TxType.MANDATORY)
+public class WalletLedgerService {
+
+    private final UserWalletRepository walletRepository;
+    private final WalletTransactionRepository transactionRepository;
+    private final WalletSnapshotService snapshotService;
+
+    /**
+     * Cộng tiền vào ví và ghi ledger
+     *
+     * @param wallet Ví nhận tiền
+     * @param entry Bản ghi giao dịch (type, amount, description, order, reference...) - balance do ledger điền
+     * @return Bản ghi đã lưu
+     * @throws IllegalStateException nếu ví bị khóa
+     */
+    public WalletTransaction credit(UserWallet wallet, WalletTransaction entry) {
+        BigDecimal amount = requirePositive(entry.getAmount());
+        if (walletRepository.creditBalance(wallet.getId(), amount) == 0) {
+            throw new IllegalStateException("Wallet is locked");
+        }
+        return append(wallet, entry, amount);
+    }
+
+    /**
+     * Trừ tiền khỏi ví (chỉ khi đủ số dư) và ghi ledger
+     *
+     * @param wallet Ví bị trừ tiền
+     * @param entry Bản ghi giao dịch (type, amount, description, order, reference...) - balance do ledger điền
+     * @return Bản ghi đã lưu
+     * @throws IllegalStateException nếu ví bị khóa hoặc không đủ số dư
+     */
+    public WalletTransaction debit(UserWallet wallet, WalletTransaction entry) {
+        BigDecimal amount = requirePositive(entry.getAmount());
+        if (walletRepository.debitBalance(wallet.getId(), amount) == 0) {
+            BigDecimal current = walletRepository.findBalanceById(wallet.getId());
+            if (current != null && current.compareTo(amount) < 0) {
+                throw new IllegalStateException(String.format(
+                        "Insufficient wallet balance. Required: %s, Available: %s", amount, current));
+            }
+            throw new IllegalStateException("Wallet is locked");
+        }
+        return append(wallet, entry, amount.negate());
+    }
+
+    /**
+     * So sánh số dư ví với tổng thay đổi trong ledger (snapshot gần nhất + giao dịch sau nó)
+     *
+     * @return true nếu khớp
+     */
+    public boolean verify(UserWallet wallet) {
+        BigDecimal balance = walletRepository.findBalanceById(wallet.getId());
+        BigDecimal ledger = snapshotService.ledgerBalance(wallet.getId());
+        boolean consistent = balance != null && balance.compareTo(ledger) == 0;
+        if (!consistent) {
+            log.error("Wallet {} balance {} does not match ledger total {}", wallet.getId(), balance, ledger);
+        }
+        return consistent;
+    }
+
+    private WalletTransaction append(UserWallet wallet, WalletTransaction entry, BigDecimal delta) {
+        BigDecimal balanceAfter = walletRepository.findBalanceById(wallet.getId());
+        // Giữ entity trong persistence context đồng bộ với DB (flush sau đó ghi lại đúng giá trị đang bị lock)
+        wallet.setBalance(balanceAfter);
+
+        entry.setWallet(wallet);
+        entry.setBalanceBefore(balanceAfter.subtract(delta));
+        entry.setBalanceAfter(balanceAfter);
+        WalletTransaction saved = transactionRepository.save(entry);
+
+        log.debug("Ledger wallet={} type={} delta={} balance {} -> {}",
+                wallet.getId(), entry.getTransactionType(), delta, entry.getBalanceBefore(), balanceAfter);
+        return saved;
+    }
+
+    private static BigDecimal requirePositive(BigDecimal amount) {
+        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        return amount;
+    }
+}
@@ -1,11 +1,13 @@
 package com.aptech.aptechMall.service.wallet;
 
+import com.aptech.aptechMall.dto.CursorPage;
 import com.aptech.aptechMall.dto.wallet.*;
 import com.aptech.aptechMall.entity.*;
 import com.aptech.aptechMall.model.jpa.User;
 import com.aptech.aptechMall.repository.UserRepository;
 import com.aptech.aptechMall.repository.UserWalletRepository;
 import com.aptech.aptechMall.repository.WalletTransactionRepository;
+import com.aptech.aptechMall.util.PageCursor;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,6 +15,7 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -95,9 +98,14 @@ import java.util.stream.Collectors;
 @Slf4j
 public class WalletService {
 
+    /** Cận dưới createdAt khi không filter startDate (DATETIME của MySQL bắt đầu từ năm 1000) */
+    private static final LocalDateTime HISTORY_START = LocalDateTime.of(1000, 1, 1, 0, 0);
+
     private final UserWalletRepository walletRepository;
     private final WalletTransactionRepository transactionRepository;
     private final UserRepository userRepository;
+    private final WalletLedgerService ledgerService;
+    private final WalletSnapshotService snapshotService;
 
     /**
      * Lấy hoặc tạo ví cho user (Thread-safe)
@@ -298,11 +306,9 @@ public class WalletService {
      * LUỒNG XỬ LÝ:
      * 1. Lấy wallet của user
      * 2. Check wallet có bị lock không (nếu lock → throw exception)
-     * 3. Ghi nhận balance_before (số dư trước khi nạp)
-     * 4. Cộng tiền vào wallet (wallet.deposit(amount))
-     * 5. Save wallet với balance mới
-     * 6. Tạo WalletTransaction record với type DEPOSIT
-     * 7. Save transaction và return response
+     * 3. WalletLedgerService.credit(): UPDATE balance = balance + amount (nguyên tử)
+     * 4. Đọc lại balance → balance_before/balance_after chính xác dù có giao dịch đồng thời
+     * 5. Tạo WalletTransaction record với type DEPOSIT và return response
      *
      * WALLET TRANSACTION RECORD:
      * - transactionType: DEPOSIT
@@ -342,25 +348,13 @@ public class WalletService {
             throw new IllegalStateException("Wallet is locked. Cannot process deposit.");
         }
 
-        // Record balance before deposit
-        BigDecimal balanceBefore = wallet.getBalance();
-
-        // Perform deposit
-        wallet.deposit(amount);
-        walletRepository.save(wallet);
-
-        // Create transaction record
-        WalletTransaction transaction = WalletTransaction.builder()
-                .wallet(wallet)
+        // Cộng tiền + ghi ledger (UPDATE nguyên tử, không read-modify-write)
+        WalletTransaction savedTransaction = ledgerService.credit(wallet, WalletTransaction.builder()
                 .transactionType(TransactionType.DEPOSIT)
                 .amount(amount)
-                .balanceBefore(balanceBefore)
-                .balanceAfter(wallet.getBalance())
                 .description(String.format("Deposit via %s", paymentGateway.name()))
                 .referenceNumber(referenceNumber)
-                .build();
-
-        WalletTransaction savedTransaction = transactionRepository.save(transaction);
+                .build());
 
         log.info("Processed deposit for user {}: amount={}, gateway={}, ref={}, newBalance={}",
                 userId, amount, paymentGateway, referenceNumber, wallet.getBalance());
@@ -425,6 +419,50 @@ public class WalletService {
         return transactions.map(this::mapToTransactionResponse);
     }
 
+    /**
+     * Lịch sử giao dịch ví - keyset pagination (cursor)
+     *
+     * Khác getTransactionHistory (offset):
+     * - Trang sau lấy theo cursor (createdAt, id) của dòng cuối trang trước → không bỏ qua offset dòng
+     * - Không COUNT(*) mỗi trang; totalCount chỉ tính khi filter.includeTotal = true
+     * - Filter type và date range dùng đồng thời được
+     *
+     * @param userId User ID (từ JWT token)
+     * @param filter TransactionFilterRequest: cursor, size, includeTotal, transactionType, startDate, endDate
+     * @return CursorPage với items và nextCursor
+     * @throws IllegalArgumentException nếu cursor không hợp lệ
+     */
+    public CursorPage<WalletTransactionResponse> getTransactionHistoryPage(Long userId, TransactionFilterRequest filter) {
+        UserWallet wallet = getOrCreateWallet(userId);
+
+        LocalDateTime since = filter.getStartDate() != null ? filter.getStartDate() : HISTORY_START;
+        LocalDateTime until = filter.getEndDate() != null ? filter.getEndDate() : PageCursor.FIRST.createdAt();
+        PageCursor cursor = filter.getCursor() != null && !filter.getCursor().isBlank()
+                ? PageCursor.decode(filter.getCursor())
+                : new PageCursor(until, Long.MAX_VALUE);
+        Pageable limit = PageCursor.limit(filter.getSize());
+
+        Slice<WalletTransaction> transactions;
+        Long total = null;
+        if (filter.getTransactionType() != null) {
+            transactions = transactionRepository.findByWalletIdAndTypeBefore(wallet.getId(),
+                    filter.getTransactionType(), since, cursor.createdAt(), cursor.id(), limit);
+            if (Boolean.TRUE.equals(filter.getIncludeTotal())) {
+                total = transactionRepository.countByWalletIdAndTransactionTypeAndCreatedAtBetween(
+                        wallet.getId(), filter.getTransactionType(), since, until);
+            }
+        } else {
+            transactions = transactionRepository.findByWalletIdBefore(wallet.getId(),
+                    since, cursor.createdAt(), cursor.id(), limit);
+            if (Boolean.TRUE.equals(filter.getIncludeTotal())) {
+                total = transactionRepository.countByWalletIdAndCreatedAtBetween(wallet.getId(), since, until);
+            }
+        }
+
+        return CursorPage.of(transactions, t -> new PageCursor(t.getCreatedAt(), t.getId()), total)
+                .map(this::mapToTransactionResponse);
+    }
+
     /**
      * Lấy chi tiết 1 transaction theo ID
      *
@@ -451,6 +489,23 @@ public class WalletService {
         return mapToTransactionResponse(transaction);
     }
 
+    /**
+     * Số dư ví tại một thời điểm trong quá khứ (sao kê, đối soát)
+     *
+     * Đọc WalletBalanceSnapshot gần nhất trước thời điểm đó + các giao dịch sau snapshot
+     * → chi phí không tăng theo lịch sử giao dịch của user
+     *
+     * @param userId User ID (từ JWT token)
+     * @param at Thời điểm cần xem số dư
+     * @return Số dư tại thời điểm at (0 nếu user chưa có ví hoặc ví chưa có giao dịch nào trước đó)
+     */
+    public BigDecimal getBalanceAt(Long userId, LocalDateTime at) {
+        // Chỉ đọc: không tạo ví cho user chưa có ví
+        return walletRepository.findByUserUserId(userId)
+                .map(wallet -> snapshotService.balanceAt(wallet.getId(), at))
+                .orElse(BigDecimal.ZERO);
+    }
+
     /**
      * Khóa ví điện tử (Admin operation)
      *
@@ -0,0 +1,55 @@
+package com.aptech.aptechMall.service.wallet;
+
+import com.aptech.aptechMall.repository.WalletTransactionRepository.WalletHead;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Component
+@Slf4j
+public class WalletSnapshotScheduler {
+
+    private final WalletSnapshotService snapshotService;
+    private final Duration lookback;
+
+    public WalletSnapshotScheduler(WalletSnapshotService snapshotService,
+                                   @Value("${wallet.snapshot.interval:PT24H}") Duration interval) {
+        this.snapshotService = snapshotService;
+        // Overlap one hour so a late or slow previous run never leaves a wallet without a checkpoint
+        this.lookback = interval.plusHours(1);
+    }
+
+    // Checkpoint every wallet that had transactions since the previous run; one transaction per wallet
+    @Scheduled(fixedDelayString = "${wallet.snapshot.interval:PT24H}",
+            initialDelayString = "${wallet.snapshot.initial-delay:PT10M}")
+    public void snapshotChangedWallets() {
+        List<WalletHead> heads;
+        try {
+            heads = snapshotService.findChangedWallets(LocalDateTime.now().minus(lookback));
+        } catch (Exception e) {
+            log.warn("Wallet snapshot run failed: {}", e.getMessage());
+            return;
+        }
+
+        int created = 0;
+        for (WalletHead head : heads) {
+            try {
+                if (snapshotService.snapshot(head.getWalletId(), head.getLastTransactionId()) != null) {
+                    created++;
+                }
+            } catch (DataIntegrityViolationException e) {
+                // Another node took the same checkpoint
+                log.debug("Snapshot of wallet {} already exists", head.getWalletId());
+            } catch (Exception e) {
+                log.warn("Snapshot of wallet {} failed: {}", head.getWalletId(), e.getMessage());
+            }
+        }
+        log.info("Wallet snapshots: {} created for {} changed wallets", created, heads.size());
+    }
+}
@@ -0,0 +1,116 @@
+package com.aptech.aptechMall.service.wallet;
+
+import com.aptech.aptechMall.entity.WalletBalanceSnapshot;
+import com.aptech.aptechMall.entity.WalletTransaction;
+import com.aptech.aptechMall.repository.WalletBalanceSnapshotRepository;
+import com.aptech.aptechMall.repository.WalletTransactionRepository;
+import com.aptech.aptechMall.repository.WalletTransactionRepository.WalletHead;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Checkpoint số dư ví (WalletBalanceSnapshot)
+ *
+ * Tại sao cần:
+ * - Đối soát 1 ví trước đây = cộng lại MỌI WalletTransaction từ lúc tạo ví → chi phí tăng theo lịch sử
+ * - Với snapshot: số dư = snapshot gần nhất + tổng thay đổi của các giao dịch sau nó (thường vài dòng)
+ *
+ * Snapshot được tạo định kỳ (WalletSnapshotScheduler) cho các ví có giao dịch mới.
+ * Trong cùng 1 ví, WalletLedgerService UPDATE số dư (giữ row lock) rồi mới INSERT giao dịch
+ * → id giao dịch tăng dần theo thứ tự commit → "id > lastTransactionId" không bỏ sót giao dịch nào.
+ *
+ * Khi tạo snapshot, số dư tính từ ledger được so với balanceAfter của giao dịch cuối:
+ * lệch → log error + metric wallet.snapshot.mismatch (đối soát tự động).
+ */
+@Service
+@Slf4j
+public class WalletSnapshotService {
+
+    private final WalletBalanceSnapshotRepository snapshotRepository;
+    private final WalletTransactionRepository transactionRepository;
+    private final Counter mismatchCounter;
+
+    public WalletSnapshotService(WalletBalanceSnapshotRepository snapshotRepository,
+                                 WalletTransactionRepository transactionRepository,
+                                 MeterRegistry meterRegistry) {
+        this.snapshotRepository = snapshotRepository;
+        this.transactionRepository = transactionRepository;
+        this.mismatchCounter = meterRegistry.counter("wallet.snapshot.mismatch");
+    }
+
+    /**
+     * Ví có giao dịch kể từ thời điểm since (kèm id giao dịch mới nhất)
+     */
+    public List<WalletHead> findChangedWallets(LocalDateTime since) {
+        return transactionRepository.findWalletHeadsSince(since);
+    }
+
+    /**
+     * Tạo snapshot của ví tính tới giao dịch upToTransactionId
+     *
+     * @return Snapshot mới, null nếu snapshot mới nhất đã bao gồm giao dịch này
+     */
+    @Transactional
+    public WalletBalanceSnapshot snapshot(Long walletId, Long upToTransactionId) {
+        WalletBalanceSnapshot previous = snapshotRepository.findFirstByWalletIdOrderByLastTransactionIdDesc(walletId)
+                .orElse(null);
+        long afterId = previous != null ? previous.getLastTransactionId() : 0L;
+        if (afterId >= upToTransactionId) {
+            return null;
+        }
+
+        WalletTransaction last = transactionRepository.findById(upToTransactionId)
+                .orElseThrow(() -> new IllegalStateException("Wallet transaction not found: " + upToTransactionId));
+        BigDecimal balance = (previous != null ? previous.getBalance() : BigDecimal.ZERO)
+                .add(transactionRepository.sumBalanceChangesInRange(walletId, afterId, upToTransactionId));
+        long count = (previous != null ? previous.getTransactionCount() : 0L)
+                + transactionRepository.countInRange(walletId, afterId, upToTransactionId);
+
+        if (balance.compareTo(last.getBalanceAfter()) != 0) {
+            mismatchCounter.increment();
+            log.error("Wallet {} ledger total {} does not match balanceAfter {} of transaction {}",
+                    walletId, balance, last.getBalanceAfter(), upToTransactionId);
+        }
+
+        WalletBalanceSnapshot snapshot = snapshotRepository.save(WalletBalanceSnapshot.builder()
+                .walletId(walletId)
+                .lastTransactionId(upToTransactionId)
+                .balance(balance)
+                .transactionCount(count)
+                .snapshotAt(last.getCreatedAt())
+                .build());
+        log.debug("Snapshot wallet {} at transaction {}: balance={}, count={}",
+                walletId, upToTransactionId, balance, count);
+        return snapshot;
+    }
+
+    /**
+     * Số dư hiện tại theo ledger = snapshot mới nhất + giao dịch sau nó
+     */
+    public BigDecimal ledgerBalance(Long walletId) {
+        WalletBalanceSnapshot latest = snapshotRepository.findFirstByWalletIdOrderByLastTransactionIdDesc(walletId)
+                .orElse(null);
+        long afterId = latest != null ? latest.getLastTransactionId() : 0L;
+        BigDecimal base = latest != null ? latest.getBalance() : BigDecimal.ZERO;
+        return base.add(transactionRepository.sumBalanceChangesInRange(walletId, afterId, Long.MAX_VALUE));
+    }
+
+    /**
+     * Số dư của ví tại thời điểm at = snapshot gần nhất trước at + giao dịch sau snapshot tới at
+     */
+    public BigDecimal balanceAt(Long walletId, LocalDateTime at) {
+        WalletBalanceSnapshot snapshot = snapshotRepository
+                .findFirstByWalletIdAndSnapshotAtLessThanEqualOrderByLastTransactionIdDesc(walletId, at)
+                .orElse(null);
+        long afterId = snapshot != null ? snapshot.getLastTransactionId() : 0L;
+        BigDecimal base = snapshot != null ? snapshot.getBalance() : BigDecimal.ZERO;
+        return base.add(transactionRepository.sumBalanceChangesAfter(walletId, afterId, at));
+    }
+}
@@ -0,0 +1,64 @@
+package com.aptech.aptechMall.util;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset cursor cho danh sách sắp xếp theo (createdAt DESC, id DESC)
+ *
+ * Thay cho offset paging: trang tiếp theo = các dòng có (createdAt, id) nhỏ hơn dòng cuối của trang trước
+ * → MySQL đi thẳng tới vị trí trong index, không phải bỏ qua offset dòng, không cần COUNT(*).
+ *
+ * Token gửi cho client là Base64 URL-safe của "createdAt|id" - client chỉ cần gửi lại nguyên văn.
+ *
+ * @param createdAt createdAt của dòng cuối trang trước
+ * @param id id của dòng cuối trang trước
+ */
+public record PageCursor(LocalDateTime createdAt, Long id) {
+
+    /**
+     * Cursor của trang đầu: lớn hơn mọi dòng (DATETIME của MySQL tối đa năm 9999)
+     */
+    public static final PageCursor FIRST = new PageCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    /**
+     * Giới hạn kích thước trang của các endpoint keyset
+     */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Pageable chỉ mang kích thước trang (luôn page 0 - vị trí đã nằm trong cursor)
+     */
+    public static Pageable limit(Integer size) {
+        int pageSize = size == null ? 20 : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return PageRequest.of(0, pageSize);
+    }
+
+    public String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token Token client gửi lên (null/rỗng = trang đầu)
+     * @return Cursor tương ứng, {@link #FIRST} nếu không có token
+     * @throws IllegalArgumentException nếu token không hợp lệ
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new PageCursor(LocalDateTime.parse(raw.substring(0, separator)), Long.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid page cursor");
+        }
+    }
+}
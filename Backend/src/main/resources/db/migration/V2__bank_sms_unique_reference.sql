@@ -0,0 +1,23 @@
+-- Bank SMS: unique transaction reference
+-- One bank transaction (GD number / MBVCB code) can only be credited once.
+-- Duplicate SMS keep transaction_reference NULL and record the reference in error_message.
+
+-- Existing duplicates: keep the reference on the oldest SMS only.
+-- Two statements: MySQL does not guarantee assignment order in a multi-table UPDATE,
+-- and the join reads transaction_reference, so it must not be cleared in the same statement.
+
+-- 1. Mark every SMS whose reference was already used by an older SMS
+UPDATE bank_sms dup
+JOIN bank_sms first
+  ON first.transaction_reference = dup.transaction_reference
+ AND first.id < dup.id
+SET dup.error_message = CONCAT('Duplicate transaction reference: ', dup.transaction_reference);
+
+-- 2. Release the reference on the rows marked above
+UPDATE bank_sms
+SET transaction_reference = NULL
+WHERE transaction_reference IS NOT NULL
+  AND error_message = CONCAT('Duplicate transaction reference: ', transaction_reference);
+
+ALTER TABLE bank_sms
+    ADD CONSTRAINT uk_sms_transaction_reference UNIQUE (transaction_reference);
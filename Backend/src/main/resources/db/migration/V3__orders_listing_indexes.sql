@@ -0,0 +1,13 @@
+-- Orders: composite indexes for user/admin order listing
+-- Every listing filters by user and/or status and sorts by created_at DESC, id DESC.
+-- With single-column indexes MySQL picks one filter index and filesorts the whole match set;
+-- these composites return rows already in order and stop after one page.
+-- (ddl-auto=update creates them from the Order entity; this script is for manually managed schemas)
+
+CREATE INDEX idx_user_created ON orders (user_id, created_at, id);
+CREATE INDEX idx_status_created ON orders (status, created_at, id);
+CREATE INDEX idx_user_status_created ON orders (user_id, status, created_at, id);
+
+-- Single-column indexes are now left prefixes of the composites above
+DROP INDEX idx_user_id ON orders;
+DROP INDEX idx_status ON orders;
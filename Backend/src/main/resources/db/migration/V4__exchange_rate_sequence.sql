@@ -0,0 +1,16 @@
+-- Exchange rates: atomic rate_version allocation
+-- rate_version used to be max(rate_version) + 1, so two concurrent writes could get the same version.
+-- Writers now lock the single counter row (SELECT ... FOR UPDATE) and increment it.
+-- (ddl-auto=update creates the table and constraint from the entities; this script is for manually managed schemas)
+
+CREATE TABLE IF NOT EXISTS exchange_rate_sequence (
+    id INT PRIMARY KEY,
+    last_version BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Start after the highest version already handed out (ExchangeRateService runs the same INSERT IGNORE on startup)
+INSERT IGNORE INTO exchange_rate_sequence (id, last_version)
+SELECT 1, COALESCE(MAX(rate_version), 0) FROM exchange_rates;
+
+ALTER TABLE exchange_rates
+    ADD CONSTRAINT uk_exchange_rates_rate_version UNIQUE (rate_version);
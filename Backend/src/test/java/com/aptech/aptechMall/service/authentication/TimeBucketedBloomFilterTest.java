@@ -0,0 +1,79 @@
+package com.aptech.aptechMall.service.authentication;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeBucketedBloomFilterTest {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    private static final long NOW = 1_760_000_000_000L - Math.floorMod(1_760_000_000_000L, HOUR); // bucket start
+
+    @Test
+    void neverReportsFalseNegatives() {
+        TimeBucketedBloomFilter filter = new TimeBucketedBloomFilter(Duration.ofHours(1), 10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("token-" + i, NOW + (i % 3) * HOUR);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("token-" + i), "token-" + i);
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        TimeBucketedBloomFilter filter = new TimeBucketedBloomFilter(Duration.ofHours(1), 10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("revoked-" + i, NOW);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("valid-" + i)) {
+                falsePositives++;
+            }
+        }
+        // Target 1%; allow some slack for the hash, still far from "always true"
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        TimeBucketedBloomFilter filter = new TimeBucketedBloomFilter(Duration.ofHours(1), 100, 0.01);
+
+        assertFalse(filter.mightContain("anything"));
+        assertEquals(0, filter.bucketCount());
+    }
+
+    @Test
+    void dropExpiredRemovesOnlyBucketsThatEnded() {
+        TimeBucketedBloomFilter filter = new TimeBucketedBloomFilter(Duration.ofHours(1), 100, 0.01);
+        filter.put("expired", NOW - HOUR + 1);
+        filter.put("current", NOW + HOUR / 2);
+        filter.put("later", NOW + 2 * HOUR);
+        assertEquals(3, filter.bucketCount());
+
+        // Halfway through the current bucket: "current" may still be valid, its bucket stays
+        filter.dropExpired(NOW + HOUR / 4);
+
+        assertEquals(2, filter.bucketCount());
+        assertTrue(filter.mightContain("current"));
+        assertTrue(filter.mightContain("later"));
+    }
+
+    @Test
+    void droppedEntriesAreForgotten() {
+        TimeBucketedBloomFilter filter = new TimeBucketedBloomFilter(Duration.ofHours(1), 100, 0.01);
+        filter.put("token", NOW);
+
+        filter.dropExpired(NOW + 2 * HOUR);
+
+        assertEquals(0, filter.bucketCount());
+        assertFalse(filter.mightContain("token"));
+    }
+}
@@ -0,0 +1,156 @@
+package com.aptech.aptechMall.service.marketplace;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonProjectionTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String DETAIL = """
+            {
+              "ErrorCode": "Ok",
+              "Debug": {"Trace": [1, 2, {"Deep": [3]}]},
+              "Result": {
+                "Item": {
+                  "Title": "Phone case",
+                  "Pictures": [{"Url": "a.jpg", "Size": {"W": 800, "H": 600}}],
+                  "Promotions": [{"Id": 1}]
+                },
+                "ProviderReviews": {
+                  "Total": 3,
+                  "Content": [
+                    {"UserNick": "an", "Text": "good", "Images": [{"Url": "r1.jpg"}]},
+                    {"UserNick": "binh", "Text": "ok"},
+                    {"UserNick": "chi", "Text": "bad", "Images": [{"Url": "r3.jpg"}]}
+                  ]
+                }
+              }
+            }
+            """;
+
+    @Test
+    void keepsOnlyDeclaredPaths() throws IOException {
+        JsonProjection projection = JsonProjection.builder()
+                .include("ErrorCode")
+                .include("Result.Item.Title")
+                .build();
+
+        Projected result = project(projection, DETAIL);
+
+        assertEquals(MAPPER.readTree("""
+                {"ErrorCode": "Ok", "Result": {"Item": {"Title": "Phone case"}}}
+                """), result.tree());
+        assertTrue(result.arraySizes().isEmpty());
+    }
+
+    @Test
+    void leafPathKeepsWholeSubtree() throws IOException {
+        JsonProjection projection = JsonProjection.builder()
+                .include("Result.Item.Pictures")
+                .include("Result.Item.Pictures.Url") // already covered by the subtree above
+                .build();
+
+        Projected result = project(projection, DETAIL);
+
+        assertEquals(MAPPER.readTree("""
+                {"Result": {"Item": {"Pictures": [{"Url": "a.jpg", "Size": {"W": 800, "H": 600}}]}}}
+                """), result.tree());
+    }
+
+    @Test
+    void arraysAreTransparentInPaths() throws IOException {
+        JsonProjection projection = JsonProjection.builder()
+                .include("Result.ProviderReviews.Content.UserNick")
+                .build();
+
+        Projected result = project(projection, DETAIL);
+
+        assertEquals(MAPPER.readTree("""
+                {"Result": {"ProviderReviews": {"Content": [
+                  {"UserNick": "an"}, {"UserNick": "binh"}, {"UserNick": "chi"}
+                ]}}}
+                """), result.tree());
+    }
+
+    @Test
+    void limitKeepsFirstElementsAndCountsAll() throws IOException {
+        JsonProjection projection = JsonProjection.builder()
+                .limit("Result.ProviderReviews.Content", 2)
+                .include("Result.ProviderReviews.Content.UserNick")
+                .include("Result.ProviderReviews.Content.Images")
+                .build();
+
+        Projected result = project(projection, DETAIL);
+
+        assertEquals(MAPPER.readTree("""
+                {"Result": {"ProviderReviews": {"Content": [
+                  {"UserNick": "an", "Images": [{"Url": "r1.jpg"}]},
+                  {"UserNick": "binh"}
+                ]}}}
+                """), result.tree());
+        assertEquals(Map.of("Result.ProviderReviews.Content", 3), result.arraySizes());
+    }
+
+    @Test
+    void limitOfEmptyArrayReportsZero() throws IOException {
+        JsonProjection projection = JsonProjection.builder()
+                .limit("Items", 5)
+                .build();
+
+        Projected result = project(projection, """
+                {"Items": [], "Other": 1}
+                """);
+
+        assertEquals(MAPPER.readTree("{\"Items\": []}"), result.tree());
+        assertEquals(Map.of("Items", 0), result.arraySizes());
+    }
+
+    @Test
+    void cannotLimitFullyIncludedPath() {
+        JsonProjection.Builder builder = JsonProjection.builder().include("Result.Item");
+
+        assertThrows(IllegalStateException.class, () -> builder.limit("Result.Item", 3));
+    }
+
+    @Test
+    void projectionIsReusableAcrossResponses() throws IOException {
+        JsonProjection projection = JsonProjection.builder()
+                .limit("Result.ProviderReviews.Content", 1)
+                .include("Result.ProviderReviews.Content.UserNick")
+                .build();
+
+        Projected first = project(projection, DETAIL);
+        Projected second = project(projection, DETAIL);
+
+        assertEquals(first.tree(), second.tree());
+        assertEquals(first.arraySizes(), second.arraySizes());
+    }
+
+    private static Projected project(JsonProjection projection, String json) throws IOException {
+        try (JsonParser parser = MAPPER.getFactory().createParser(json);
+             TokenBuffer tokens = new TokenBuffer(parser)) {
+            JsonProjection.Filter filter = projection.newFilter(parser, tokens);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                filter.onToken(token);
+            }
+            return new Projected(MAPPER.readTree(tokens.asParser(MAPPER)), new HashMap<>(filter.arraySizes()));
+        }
+    }
+
+    private record Projected(JsonNode tree, Map<String, Integer> arraySizes) {
+    }
+}
@@ -0,0 +1,112 @@
+package com.aptech.aptechMall.service.wallet;
+
+import com.aptech.aptechMall.service.wallet.BankSmsGrammar.Result;
+import com.aptech.aptechMall.service.wallet.BankSmsGrammar.Rule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Built-in grammars against the SMS formats documented in BankSmsParserService and TESTING_GUIDE.md
+ *
+ * Username is only a candidate: DepositUserResolver tries it first and falls back to userId,
+ * so e.g. "ND: NAP TIEN USER123" yields username NAP and userId 123.
+ */
+class BankSmsGrammarTest {
+
+    private static final Map<String, BankSmsGrammar> GRAMMARS = Map.of(
+            "DEFAULT", BankSmsGrammarRegistry.DEFAULT_GRAMMAR,
+            "MBBANK", BankSmsGrammarRegistry.MBBANK_GRAMMAR,
+            "STANDARD", BankSmsGrammarRegistry.STANDARD_GRAMMAR);
+
+    @ParameterizedTest(name = "{0}: {1}")
+    @CsvSource(delimiter = '|', value = {
+            // grammar | message | amount | reference | username | userId
+
+            // MBBank: "GD: +200,000VND" is the amount, reference is the MBVCB code (MBBANK/DEFAULT only)
+            "DEFAULT  | TK 09xxx279 GD: +200,000VND 05/11/25 07:21 SD: 335,163VND ND: MBVCB.11586295199.373933.TRIEU THIHONG THAO chuyen tien USER123 | 200000 | MBVCB_11586295199_373933 | | 123",
+            "MBBANK   | TK 09xxx279 GD: +200,000VND 05/11/25 07:21 SD: 335,163VND ND: MBVCB.11586295199.373933.TRIEU THIHONG THAO chuyen tien USER123 | 200000 | MBVCB_11586295199_373933 | | 123",
+            "STANDARD | TK 09xxx279 GD: +200,000VND 05/11/25 07:21 SD: 335,163VND ND: MBVCB.11586295199.373933.TRIEU THIHONG THAO chuyen tien USER123 | 200000 | | | 123",
+            "DEFAULT  | TK 0975299279 GD: +500,000VND 06/11/25 20:30 SD: 750,000VND ND: MBVCB.123.456.NAP TIEN USER1 | 500000 | MBVCB_123_456 | | 1",
+            "MBBANK   | TK 0975299279 GD: +500,000VND 06/11/25 20:30 SD: 750,000VND ND: MBVCB.123.456.NAP TIEN USER1 | 500000 | MBVCB_123_456 | | 1",
+            "STANDARD | TK 0975299279 GD: +500,000VND 06/11/25 20:30 SD: 750,000VND ND: MBVCB.123.456.NAP TIEN USER1 | 500000 | | | 1",
+
+            // Vietcombank: "GD: 123456" after the amount
+            "DEFAULT  | TK 1234567890 +500,000 VND. GD: 123456. ND: NAP TIEN USER123 | 500000 | GD123456 | NAP | 123",
+            "MBBANK   | TK 1234567890 +500,000 VND. GD: 123456. ND: NAP TIEN USER123 | 500000 | GD123456 | NAP | 123",
+            "STANDARD | TK 1234567890 +500,000 VND. GD: 123456. ND: NAP TIEN USER123 | 500000 | GD123456 | NAP | 123",
+
+            // "Ma GD" reference + username deposit code
+            "DEFAULT  | TK 1234567890 +1,500,000 VND. Ma GD: FT24310ABCDE. ND: NAP TIEN DEMOACCOUNT | 1500000 | GDFT24310ABCDE | DEMOACCOUNT | ",
+            "MBBANK   | TK 1234567890 +1,500,000 VND. Ma GD: FT24310ABCDE. ND: NAP TIEN DEMOACCOUNT | 1500000 | GDFT24310ABCDE | DEMOACCOUNT | ",
+            "STANDARD | TK 1234567890 +1,500,000 VND. Ma GD: FT24310ABCDE. ND: NAP TIEN DEMOACCOUNT | 1500000 | GDFT24310ABCDE | DEMOACCOUNT | ",
+
+            // Generic
+            "DEFAULT  | +500000d GD:123456 ND:NAPTIEN USER123 | 500000 | GD123456 | NAPTIEN | 123",
+            "MBBANK   | +500000d GD:123456 ND:NAPTIEN USER123 | 500000 | GD123456 | NAPTIEN | 123",
+            "STANDARD | +500000d GD:123456 ND:NAPTIEN USER123 | 500000 | GD123456 | NAPTIEN | 123",
+
+            // "+500K" is thousands, not 500đ
+            "DEFAULT  | Tai khoan +500k USER123 | 500000 | | KHOAN | 123",
+            "MBBANK   | Tai khoan +500k USER123 | 500000 | | KHOAN | 123",
+            "STANDARD | Tai khoan +500k USER123 | 500000 | | KHOAN | 123",
+            "STANDARD | GD 100k USER1 | 100000 | | | 1",
+
+            // "GD 100" test format: only senders without a bank grammar
+            "DEFAULT  | GD 100 | 100000 | | | ",
+            "MBBANK   | GD 100 | | | | ",
+            "STANDARD | GD 100 | | | | ",
+    })
+    void parsesDocumentedFormats(String grammar, String message, BigDecimal amount, String reference,
+                                 String username, Long userId) {
+        Result result = GRAMMARS.get(grammar).parse(message.toUpperCase().trim());
+
+        if (amount == null) {
+            assertNull(result.amount());
+        } else {
+            assertEquals(0, amount.compareTo(result.amount()), "amount " + result.amount());
+        }
+        assertEquals(reference, result.reference());
+        assertEquals(username, result.username());
+        assertEquals(userId, result.userId());
+    }
+
+    @Test
+    void emailIsLowercased() {
+        Result result = BankSmsGrammarRegistry.STANDARD_GRAMMAR.parse("TK 123 +50,000VND ND: TESTUSER001@EXAMPLE.COM");
+
+        assertEquals("testuser001@example.com", result.email());
+        assertEquals(0, new BigDecimal("50000").compareTo(result.amount()));
+    }
+
+    @Test
+    void reportsRulesTriedUntilTheWinner() {
+        BankSmsGrammar grammar = new BankSmsGrammar("TEST", List.of(
+                Rule.amount("PLUS_K", "[+]([0-9]+)K", 1000),
+                Rule.amount("PLUS", "[+]([0-9,]+)", 1),
+                Rule.amount("K", "\\b([0-9]+)K", 1000)));
+        List<String> tried = new ArrayList<>();
+
+        Result result = grammar.parse("+200,000 VND", (index, matched) ->
+                tried.add(grammar.getRules().get(index).name() + "=" + matched));
+
+        assertEquals(0, new BigDecimal("200000").compareTo(result.amount()));
+        assertEquals(List.of("PLUS_K=false", "PLUS=true"), tried);
+    }
+
+    @Test
+    void rejectsValueGroupMissingFromRegex() {
+        List<Rule> rules = List.of(Rule.reference("BAD", "GD[0-9]+", 1, "GD"));
+
+        assertThrows(IllegalArgumentException.class, () -> new BankSmsGrammar("TEST", rules));
+    }
+}
@@ -0,0 +1,261 @@
+package com.aptech.aptechMall.service.wallet;
+
+import com.aptech.aptechMall.entity.TransactionType;
+import com.aptech.aptechMall.entity.UserWallet;
+import com.aptech.aptechMall.entity.WalletTransaction;
+import com.aptech.aptechMall.model.jpa.User;
+import com.aptech.aptechMall.repository.UserRepository;
+import com.aptech.aptechMall.repository.UserWalletRepository;
+import com.aptech.aptechMall.repository.WalletTransactionRepository;
+import com.aptech.aptechMall.security.Role;
+import com.aptech.aptechMall.security.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress test WalletLedgerService trên MySQL thật (UPDATE có điều kiện + row lock là hành vi của InnoDB)
+ *
+ * Nhiều thread cùng credit/debit một ví, mỗi thao tác 1 transaction riêng, rồi kiểm tra:
+ * - Số dư cuối = ban đầu + Σcredit − Σdebit (không mất tiền)
+ * - Số dư không bao giờ âm
+ * - Các WalletTransaction nối tiếp nhau (balanceBefore = balanceAfter của dòng trước) và khớp số dư
+ *
+ * Thêm một phép đo thông lượng: nạp tiền vào các ví khác nhau với 1 và {@value #SCALING_THREADS} thread,
+ * không có lock toàn cục nên nhiều thread phải nhanh hơn rõ rệt
+ */
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Import({WalletLedgerService.class, WalletSnapshotService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // mỗi thao tác tự commit, như production
+class WalletLedgerServiceConcurrencyTest {
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    private static final BigDecimal INITIAL_BALANCE = BigDecimal.valueOf(1_000_000);
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 50;
+    private static final int SCALING_THREADS = 4;
+    private static final double MIN_SPEEDUP = 1.5; // lỏng: máy CI dao động, chỉ bắt lỗi tuần tự hoá hoàn toàn
+
+    @Autowired
+    private WalletLedgerService ledgerService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private UserWalletRepository walletRepository;
+    @Autowired
+    private WalletTransactionRepository transactionRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+    private Long walletId;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        walletId = createWallet();
+    }
+
+    private Long createWallet() {
+        String name = "ledger" + UUID.randomUUID().toString().substring(0, 8);
+        User user = userRepository.save(User.builder()
+                .username(name)
+                .email(name + "@test.vn")
+                .password("x")
+                .fullName("Ledger Test")
+                .role(Role.CUSTOMER)
+                .status(Status.ACTIVE)
+                .build());
+        UserWallet wallet = new UserWallet();
+        wallet.setUser(user);
+        wallet.setBalance(INITIAL_BALANCE);
+        return walletRepository.save(wallet).getId();
+    }
+
+    @Test
+    void concurrentCreditsAndDebitsLoseNoMoney() throws Exception {
+        AtomicLong credited = new AtomicLong();
+        AtomicLong debited = new AtomicLong();
+        AtomicInteger rejected = new AtomicInteger();
+
+        runConcurrently(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                long amount = random.nextLong(1_000, 60_000);
+                if (random.nextBoolean()) {
+                    apply(TransactionType.DEPOSIT, amount);
+                    credited.addAndGet(amount);
+                } else {
+                    try {
+                        apply(TransactionType.ORDER_PAYMENT, amount);
+                        debited.addAndGet(amount);
+                    } catch (IllegalStateException e) {
+                        rejected.incrementAndGet(); // không đủ số dư - hợp lệ
+                    }
+                }
+            }
+            return null;
+        });
+
+        BigDecimal expected = INITIAL_BALANCE
+                .add(BigDecimal.valueOf(credited.get()))
+                .subtract(BigDecimal.valueOf(debited.get()));
+        assertLedgerMatches(expected, THREADS * OPERATIONS_PER_THREAD - rejected.get());
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdraw() throws Exception {
+        long amount = 30_000; // 1,000,000 / 30,000 → chỉ 33 lần trừ được
+        AtomicInteger succeeded = new AtomicInteger();
+
+        runConcurrently(() -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                try {
+                    apply(TransactionType.ORDER_PAYMENT, amount);
+                    succeeded.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    // không đủ số dư
+                }
+            }
+            return null;
+        });
+
+        long maxDebits = INITIAL_BALANCE.longValue() / amount;
+        assertEquals(maxDebits, succeeded.get());
+        assertLedgerMatches(INITIAL_BALANCE.subtract(BigDecimal.valueOf(maxDebits * amount)), (int) maxDebits);
+    }
+
+    @Test
+    void throughputScalesAcrossWallets() throws Exception {
+        depositsPerSecond(1); // warm-up: JIT, connection pool, InnoDB buffer
+
+        double single = depositsPerSecond(1);
+        double parallel = depositsPerSecond(SCALING_THREADS);
+
+        assertTrue(parallel >= single * MIN_SPEEDUP, String.format(
+                "%d threads: %.0f ops/s, 1 thread: %.0f ops/s", SCALING_THREADS, parallel, single));
+    }
+
+    /**
+     * Mỗi thread nạp tiền vào ví riêng, trả về số thao tác/giây
+     */
+    private double depositsPerSecond(int threads) throws Exception {
+        List<Long> wallets = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            wallets.add(createWallet());
+        }
+        AtomicInteger next = new AtomicInteger();
+        long amount = 10_000;
+
+        long start = System.nanoTime();
+        runConcurrently(threads, () -> {
+            Long wallet = wallets.get(next.getAndIncrement());
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                apply(wallet, TransactionType.DEPOSIT, amount);
+            }
+            return null;
+        });
+        long elapsed = System.nanoTime() - start;
+
+        BigDecimal expected = INITIAL_BALANCE.add(BigDecimal.valueOf(OPERATIONS_PER_THREAD * amount));
+        for (Long wallet : wallets) {
+            assertEquals(0, expected.compareTo(walletRepository.findBalanceById(wallet)), "wallet " + wallet);
+        }
+        return threads * OPERATIONS_PER_THREAD * 1e9 / elapsed;
+    }
+
+    private void apply(TransactionType type, long amount) {
+        apply(walletId, type, amount);
+    }
+
+    private void apply(Long walletId, TransactionType type, long amount) {
+        tx.executeWithoutResult(status -> {
+            UserWallet wallet = walletRepository.findById(walletId).orElseThrow();
+            WalletTransaction entry = WalletTransaction.builder()
+                    .transactionType(type)
+                    .amount(BigDecimal.valueOf(amount))
+                    .description("stress " + type)
+                    .build();
+            if (type == TransactionType.DEPOSIT) {
+                ledgerService.credit(wallet, entry);
+            } else {
+                ledgerService.debit(wallet, entry);
+            }
+        });
+    }
+
+    private void runConcurrently(Callable<Void> worker) throws Exception {
+        runConcurrently(THREADS, worker);
+    }
+
+    private void runConcurrently(int threads, Callable<Void> worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(worker));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void assertLedgerMatches(BigDecimal expectedBalance, int expectedTransactions) {
+        BigDecimal balance = walletRepository.findBalanceById(walletId);
+        assertEquals(0, expectedBalance.compareTo(balance), "balance " + balance + " != " + expectedBalance);
+
+        List<WalletTransaction> rows = transactionRepository.findAll().stream()
+                .filter(t -> t.getWallet().getId().equals(walletId))
+                .sorted(Comparator.comparing(WalletTransaction::getId))
+                .toList();
+        assertEquals(expectedTransactions, rows.size());
+
+        BigDecimal running = INITIAL_BALANCE;
+        for (WalletTransaction row : rows) {
+            assertEquals(0, running.compareTo(row.getBalanceBefore()), "gap before transaction " + row.getId());
+            assertTrue(row.getBalanceAfter().signum() >= 0, "negative balance at transaction " + row.getId());
+            BigDecimal delta = row.getTransactionType() == TransactionType.DEPOSIT
+                    ? row.getAmount()
+                    : row.getAmount().negate();
+            assertEquals(0, running.add(delta).compareTo(row.getBalanceAfter()), "wrong delta at " + row.getId());
+            running = row.getBalanceAfter();
+        }
+        assertEquals(0, running.compareTo(balance), "ledger " + running + " != balance " + balance);
+    }
+}
@@ -0,0 +1,74 @@
+package com.aptech.aptechMall.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageCursorTest {
+
+    @Test
+    void roundTripsThroughToken() {
+        PageCursor cursor = new PageCursor(LocalDateTime.of(2025, 11, 6, 20, 30, 15, 123_456_000), 42L);
+
+        String token = cursor.encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), "URL-safe without padding: " + token);
+        assertEquals(cursor, PageCursor.decode(token));
+    }
+
+    @Test
+    void roundTripsWholeSecond() {
+        // LocalDateTime.toString() drops ":00" seconds → "2025-01-01T00:00"
+        PageCursor cursor = new PageCursor(LocalDateTime.of(2025, 1, 1, 0, 0), 1L);
+
+        assertEquals(cursor, PageCursor.decode(cursor.encode()));
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {"   "})
+    void missingTokenStartsAtFirstPage(String token) {
+        assertSame(PageCursor.FIRST, PageCursor.decode(token));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "not base64!",
+            "bm9zZXBhcmF0b3I",          // "noseparator"
+            "MjAyNS0xMy0wMVQwMDowMHwx", // "2025-13-01T00:00|1"
+            "MjAyNS0wMS0wMVQwMDowMHx4"  // "2025-01-01T00:00|x"
+    })
+    void rejectsMalformedToken(String token) {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(token));
+        assertEquals("Invalid page cursor", error.getMessage());
+    }
+
+    @Test
+    void firstCursorIsAfterEveryRow() {
+        assertTrue(PageCursor.FIRST.createdAt().isAfter(LocalDateTime.of(9999, 1, 1, 0, 0)));
+        assertEquals(Long.MAX_VALUE, PageCursor.FIRST.id());
+    }
+
+    @Test
+    void limitClampsPageSize() {
+        assertPage(PageCursor.limit(null), 20);
+        assertPage(PageCursor.limit(0), 1);
+        assertPage(PageCursor.limit(-5), 1);
+        assertPage(PageCursor.limit(50), 50);
+        assertPage(PageCursor.limit(10_000), PageCursor.MAX_PAGE_SIZE);
+    }
+
+    private static void assertPage(Pageable pageable, int size) {
+        assertEquals(0, pageable.getPageNumber());
+        assertEquals(size, pageable.getPageSize());
+    }
+}